@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker;
+
+import java.nio.file.Path;
+
+import org.osgi.annotation.versioning.ConsumerType;
+
+/**
+ * Listener for the progress of a {@link StaticExporter static export}, called concurrently from the exporting threads.
+ */
+@ConsumerType
+@SuppressWarnings("checkstyle:InterfaceMemberImpliedModifier")
+public interface StaticExportListener {
+
+    /**
+     * Called after a resource has been exported.
+     *
+     * @param path      the path of the resource
+     * @param file      the written file
+     * @param time      the time taken to render and write the resource in milliseconds
+     * @param completed the number of exported and failed resources so far
+     * @param total     the total number of resources to export
+     */
+    void exported(String path, Path file, long time, int completed, int total);
+
+    /**
+     * Called after exporting a resource failed.
+     *
+     * @param path      the path of the resource
+     * @param exception the cause of the failure
+     * @param completed the number of exported and failed resources so far
+     * @param total     the total number of resources to export
+     */
+    void failed(String path, Exception exception, int completed, int total);
+
+}
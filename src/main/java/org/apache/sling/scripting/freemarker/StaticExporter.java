@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.apache.sling.api.resource.ResourceResolver;
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * Exports a resource tree to static files by rendering its resources with their FreeMarker {@code html.ftl} scripts
+ * outside of requests.
+ *
+ * <p>Scripts are resolved by the servlet resolver like scripts named {@code html} for the resources' types (and super
+ * types). Resources are rendered in parallel, each with the bindings {@code resource} and {@code resolver} and the
+ * values of the bindings values providers for FreeMarker, e.g. {@code properties}. Bindings depending on a request
+ * ({@code request}, {@code response} and {@code sling}) are not available. Resources without a FreeMarker script are
+ * skipped.
+ */
+@ProviderType
+@SuppressWarnings("checkstyle:InterfaceMemberImpliedModifier")
+public interface StaticExporter {
+
+    /**
+     * Exports a resource and its descendants, writing each rendering to {@code <directory>/<resource path>.html}.
+     *
+     * @param resourceResolver the resource resolver to read the resources and scripts with, cloned for parallel
+     *                         renderings
+     * @param path             the path of the resource tree's root
+     * @param directory        the directory to write the files to
+     * @param listener         the listener notified of the progress
+     * @return the number of exported resources
+     * @throws IOException if the resource tree is not found or the export is interrupted
+     */
+    int export(ResourceResolver resourceResolver, String path, Path directory, StaticExportListener listener) throws IOException;
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker;
+
+/**
+ * A pattern found by the {@link TemplateLinter} at a location in a template.
+ *
+ * <p>The estimated cost is relative, the base cost of the rule multiplied by ten for each enclosing loop.
+ */
+@SuppressWarnings("checkstyle:ClassMemberImpliedModifier")
+public final class TemplateFinding {
+
+    /**
+     * The rules of the {@link TemplateLinter}.
+     */
+    public enum Rule {
+
+        /**
+         * The template fails to parse.
+         */
+        PARSE_ERROR,
+
+        /**
+         * {@code sling.adaptTo} is called in a loop.
+         */
+        ADAPT_TO_IN_LOOP,
+
+        /**
+         * {@code sling.include} or {@code sling.includeAll} is used in a loop.
+         */
+        INCLUDE_IN_LOOP,
+
+        /**
+         * {@code ?eval}, {@code ?eval_json} or {@code ?interpret} parses a string while rendering.
+         */
+        EVAL,
+
+        /**
+         * {@code #list} iterates over all children of a resource or node.
+         */
+        UNBOUNDED_CHILDREN
+
+    }
+
+    private final String template;
+
+    private final int line;
+
+    private final int column;
+
+    private final Rule rule;
+
+    private final String message;
+
+    private final long cost;
+
+    /**
+     * Creates a finding.
+     *
+     * @param template the name of the template
+     * @param line     the line of the location, starting with 1
+     * @param column   the column of the location, starting with 1
+     * @param rule     the rule which found the pattern
+     * @param message  the description of the pattern found
+     * @param cost     the estimated cost
+     */
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    public TemplateFinding(final String template, final int line, final int column, final Rule rule, final String message, final long cost) {
+        this.template = template;
+        this.line = line;
+        this.column = column;
+        this.rule = rule;
+        this.message = message;
+        this.cost = cost;
+    }
+
+    /**
+     * Returns the name of the template.
+     *
+     * @return the name of the template
+     */
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * Returns the line of the location, starting with 1.
+     *
+     * @return the line of the location, starting with 1
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * Returns the column of the location, starting with 1.
+     *
+     * @return the column of the location, starting with 1
+     */
+    public int getColumn() {
+        return column;
+    }
+
+    /**
+     * Returns the rule which found the pattern.
+     *
+     * @return the rule which found the pattern
+     */
+    public Rule getRule() {
+        return rule;
+    }
+
+    /**
+     * Returns the description of the pattern found.
+     *
+     * @return the description of the pattern found
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Returns the estimated cost.
+     *
+     * @return the estimated cost
+     */
+    public long getCost() {
+        return cost;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s:%s:%s %s %s (estimated cost %s)", template, line, column, rule, message, cost);
+    }
+
+}
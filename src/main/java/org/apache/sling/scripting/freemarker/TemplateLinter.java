@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+
+import org.apache.sling.api.resource.ResourceResolver;
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * Finds patterns in FreeMarker templates which are expensive to render, e.g. adapting or including in loops.
+ *
+ * <p>Templates are parsed with the configuration of the FreeMarker script engine and their parsed elements are checked,
+ * so templates are analyzed without rendering them.
+ */
+@ProviderType
+@SuppressWarnings("checkstyle:InterfaceMemberImpliedModifier")
+public interface TemplateLinter {
+
+    /**
+     * Checks a template or all templates ({@code .ftl} files) below a path.
+     *
+     * @param resourceResolver the resource resolver to read the templates with
+     * @param path             the path of a template or of a tree of templates, e.g. {@code /apps/site}
+     * @return the findings ordered by template and location, including a finding for each template failing to parse
+     * @throws IOException if the path is not found or reading a template fails
+     */
+    List<TemplateFinding> lint(ResourceResolver resourceResolver, String path) throws IOException;
+
+    /**
+     * Checks the source of a template, e.g. read from a content package.
+     *
+     * @param name   the name of the template used in the findings
+     * @param reader the reader for the template's source
+     * @return the findings ordered by location, a single finding if the template fails to parse
+     * @throws IOException if reading the template fails
+     */
+    List<TemplateFinding> lint(String name, Reader reader) throws IOException;
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.api.resource.ResourceResolver;
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * Renders FreeMarker templates outside of requests, e.g. emails, feeds or exports in background jobs.
+ *
+ * <p>Renderings use the configuration, template models and template cache of the FreeMarker script engine. Template
+ * models requiring a request (e.g. {@code sling.include}) are not supported. A key of the data model named like a
+ * namespace of template models (e.g. {@code sling}) takes precedence and hides the namespace from the template.
+ */
+@ProviderType
+@SuppressWarnings("checkstyle:InterfaceMemberImpliedModifier")
+public interface TemplateRenderer {
+
+    /**
+     * Renders a template into a writer.
+     *
+     * @param resourceResolver the resource resolver to read the template with
+     * @param path             the path of the template, e.g. {@code /apps/mail/welcome.ftl}
+     * @param dataModel        the data model
+     * @param writer           the writer to write the output to
+     * @throws IOException if the template is not found or reading, processing or writing fails
+     */
+    void render(ResourceResolver resourceResolver, String path, Map<String, Object> dataModel, Writer writer) throws IOException;
+
+    /**
+     * Renders a template into an output stream.
+     *
+     * @param resourceResolver the resource resolver to read the template with
+     * @param path             the path of the template, e.g. {@code /apps/mail/welcome.ftl}
+     * @param dataModel        the data model
+     * @param outputStream     the output stream to write the output to
+     * @param charset          the charset to encode the output with
+     * @throws IOException if the template is not found or reading, processing or writing fails
+     */
+    void render(ResourceResolver resourceResolver, String path, Map<String, Object> dataModel, OutputStream outputStream, Charset charset) throws IOException;
+
+    /**
+     * Renders a template once per data model, reading the template and collecting the template models only once.
+     *
+     * @param resourceResolver the resource resolver to read the template with
+     * @param path             the path of the template, e.g. {@code /apps/mail/welcome.ftl}
+     * @param dataModels       the data models
+     * @return the outputs in the order of the data models
+     * @throws IOException if the template is not found or reading or processing fails
+     */
+    List<String> render(ResourceResolver resourceResolver, String path, List<Map<String, Object>> dataModels) throws IOException;
+
+}
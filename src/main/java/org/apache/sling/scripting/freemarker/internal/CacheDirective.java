@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import freemarker.core.Environment;
+import freemarker.template.TemplateDirectiveBody;
+import freemarker.template.TemplateDirectiveModel;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.utility.DeepUnwrap;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.scripting.SlingBindings;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+/**
+ * Support for caching the output of template fragments in FreeMarker templates.
+ *
+ * <p>The body is rendered once and its output is cached under the given {@code key}, which is scoped to the template.
+ * Until the cached output expires after {@code ttl} seconds, is evicted or is invalidated by a change of a resource
+ * given with {@code dependsOn} (paths or resources) or of the template itself, the output is written without rendering
+ * the body again. Deferred includes are rendered in place while the body is rendered for caching.
+ */
+@Component(
+    service = {
+        TemplateModel.class
+    },
+    property = {
+        "namespace=sling",
+        "name=cache"
+    }
+)
+public final class CacheDirective implements TemplateDirectiveModel {
+
+    private static final String KEY_PARAMETER_NAME = "key";
+
+    private static final String TTL_PARAMETER_NAME = "ttl";
+
+    private static final String DEPENDS_ON_PARAMETER_NAME = "dependsOn";
+
+    @Reference
+    private FragmentCache fragmentCache;
+
+    public CacheDirective() { //
+    }
+
+    @Override
+    public void execute(final Environment environment, final Map parameters, final TemplateModel[] loopVars, final TemplateDirectiveBody body) throws TemplateException, IOException {
+        final Object key = IncludeSupport.unwrapParameter(KEY_PARAMETER_NAME, parameters);
+        if (Objects.isNull(key)) {
+            throw new TemplateException("key is null", environment);
+        }
+        if (Objects.isNull(body)) {
+            return;
+        }
+        // keys are prefixed with the template name, so templates do not share fragments by choosing the same key
+        final String name = String.format("%s:%s", CachedTemplate.scriptName(environment), key);
+        final String cached = fragmentCache.get(name);
+        if (!Objects.isNull(cached)) {
+            environment.getOut().write(cached);
+        } else {
+            final long ttl = ttl(IncludeSupport.unwrapParameter(TTL_PARAMETER_NAME, parameters), environment);
+            final Collection<String> dependsOn = dependsOn(IncludeSupport.unwrapParameter(DEPENDS_ON_PARAMETER_NAME, parameters), environment);
+            final StringWriter writer = new StringWriter();
+            final Runnable resume = suspendDeferredIncludes(environment);
+            try {
+                body.render(writer);
+            } finally {
+                resume.run();
+            }
+            final String content = writer.toString();
+            fragmentCache.put(name, content, ttl, dependsOn);
+            environment.getOut().write(content);
+        }
+    }
+
+    // placeholders of deferred includes would be cached without their content, so includes are rendered in place
+    @SuppressWarnings("checkstyle:AvoidInlineConditionals")
+    private static Runnable suspendDeferredIncludes(final Environment environment) throws TemplateModelException {
+        final Object request = DeepUnwrap.unwrap(environment.getVariable(SlingBindings.REQUEST));
+        return DeferredIncludes.suspend(request instanceof SlingHttpServletRequest ? (SlingHttpServletRequest) request : null);
+    }
+
+    private static long ttl(final Object ttl, final Environment environment) throws TemplateException {
+        if (Objects.isNull(ttl)) {
+            return 0;
+        }
+        if (!(ttl instanceof Number)) {
+            throw new TemplateException("ttl must be a number of seconds", environment);
+        }
+        return TimeUnit.MILLISECONDS.toNanos(Math.round(((Number) ttl).doubleValue() * TimeUnit.SECONDS.toMillis(1)));
+    }
+
+    // the template itself is always a dependency, so changing it invalidates its cached fragments
+    private static Collection<String> dependsOn(final Object dependsOn, final Environment environment) throws TemplateException {
+        final List<String> paths = new ArrayList<>();
+        paths.add(CachedTemplate.scriptName(environment));
+        for (final Object dependency : dependencies(dependsOn)) {
+            if (dependency instanceof Resource) {
+                paths.add(((Resource) dependency).getPath());
+            } else if (dependency instanceof String) {
+                paths.add((String) dependency);
+            } else {
+                throw new TemplateException(String.format("cannot depend on %s, expecting resources or paths", dependency), environment);
+            }
+        }
+        return paths;
+    }
+
+    private static Iterable<?> dependencies(final Object dependsOn) {
+        final Iterable<?> dependencies;
+        if (dependsOn instanceof Iterable) {
+            dependencies = (Iterable<?>) dependsOn;
+        } else if (dependsOn instanceof Object[]) {
+            dependencies = Arrays.asList((Object[]) dependsOn);
+        } else if (Objects.isNull(dependsOn)) {
+            dependencies = Collections.emptyList();
+        } else {
+            dependencies = Collections.singletonList(dependsOn);
+        }
+        return dependencies;
+    }
+
+}
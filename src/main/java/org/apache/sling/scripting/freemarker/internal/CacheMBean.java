@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+/**
+ * Management interface exposing the memory use of a cache.
+ */
+@SuppressWarnings({"checkstyle:AbbreviationAsWordInName", "checkstyle:InterfaceMemberImpliedModifier"})
+public interface CacheMBean {
+
+    /**
+     * Returns the number of cached entries.
+     *
+     * @return the number of entries
+     */
+    int getEntries();
+
+    /**
+     * Returns the estimated number of heap bytes retained by the cached entries.
+     *
+     * @return the estimated number of bytes
+     */
+    long getEstimatedBytes();
+
+    /**
+     * Returns the maximum number of heap bytes retained by the cached entries.
+     *
+     * @return the maximum number of bytes, {@code 0} for no limit
+     */
+    long getMaxBytes();
+
+    /**
+     * Returns the number of bytes of cached entries stored off-heap.
+     *
+     * @return the number of off-heap bytes
+     */
+    long getOffHeapBytes();
+
+    /**
+     * Returns the number of entries evicted to stay within the limits or to relieve memory pressure.
+     *
+     * @return the number of evicted entries
+     */
+    long getEvictions();
+
+}
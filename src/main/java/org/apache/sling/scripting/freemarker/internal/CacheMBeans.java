@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.util.Dictionary;
+import java.util.Hashtable;
+
+import javax.management.DynamicMBean;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
+
+/**
+ * Registers caches as {@link CacheMBean}s with the JMX whiteboard.
+ */
+@SuppressWarnings("checkstyle:AbbreviationAsWordInName")
+final class CacheMBeans {
+
+    private static final String OBJECT_NAME_PROPERTY = "jmx.objectname";
+
+    private static final String OBJECT_NAME_PREFIX = "org.apache.sling.scripting.freemarker:type=Cache,name=";
+
+    private static final String PLAIN_NAME = "[\\w.-]+";
+
+    private CacheMBeans() { //
+    }
+
+    /**
+     * Registers a cache as MBean named {@code org.apache.sling.scripting.freemarker:type=Cache,name=<name>}.
+     *
+     * @param bundleContext the bundle context to register the MBean with
+     * @param name          the name of the cache
+     * @param cache         the cache
+     * @return the registration of the MBean
+     */
+    static ServiceRegistration<DynamicMBean> register(final BundleContext bundleContext, final String name, final CacheMBean cache) {
+        final Dictionary<String, Object> properties = new Hashtable<>();
+        properties.put(OBJECT_NAME_PROPERTY, OBJECT_NAME_PREFIX.concat(objectName(name)));
+        try {
+            return bundleContext.registerService(DynamicMBean.class, new StandardMBean(cache, CacheMBean.class), properties);
+        } catch (NotCompliantMBeanException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Unregisters a cache's MBean.
+     *
+     * @param registration the registration of the MBean or {@code null}
+     */
+    static void unregister(final ServiceRegistration<DynamicMBean> registration) {
+        if (registration != null) {
+            registration.unregister();
+        }
+    }
+
+    private static String objectName(final String name) {
+        if (name.matches(PLAIN_NAME)) {
+            return name;
+        }
+        return ObjectName.quote(name);
+    }
+
+}
@@ -0,0 +1,254 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ObjLongConsumer;
+import java.util.regex.Pattern;
+
+import freemarker.core.Environment;
+import freemarker.core.TextBlock;
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+
+/**
+ * A parsed FreeMarker template together with its static text segments.
+ *
+ * <p>Scripts with identical sources share their parsed template, so the name of the script is kept separately.
+ *
+ * <p>A single macro is rendered by a small template running the imports of the template and calling the macro. It has
+ * all macros of the template but does not execute any other top-level code of it.
+ */
+final class CachedTemplate {
+
+    private static final String NAME_ATTRIBUTE_NAME = CachedTemplate.class.getName();
+
+    private static final Pattern MACRO_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    private final String name;
+
+    private final Template template;
+
+    private final long lastModified;
+
+    // the estimated heap retained by the parsed template
+    private final long weight;
+
+    // the arrays of the template's text blocks
+    private final List<char[]> texts;
+
+    private final Map<Charset, StaticText> staticTexts = new ConcurrentHashMap<>();
+
+    // notified of the estimated bytes of static text pre-encoded for another charset
+    private final ObjLongConsumer<CachedTemplate> staticTextAdded;
+
+    // templates calling a single macro by macro name
+    private final Map<String, Template> fragments = new ConcurrentHashMap<>();
+
+    private volatile long lastAccess = System.nanoTime();
+
+    CachedTemplate(final String name, final Template template, final long lastModified, final long weight, final ObjLongConsumer<CachedTemplate> staticTextAdded) {
+        this.name = name;
+        this.template = template;
+        this.lastModified = lastModified;
+        this.weight = weight;
+        this.staticTextAdded = staticTextAdded;
+        final List<char[]> texts = new ArrayList<>();
+        collectTexts(template, texts);
+        this.texts = Collections.unmodifiableList(texts);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    Template getTemplate() {
+        return template;
+    }
+
+    /**
+     * Records an access to the cached template.
+     */
+    void touch() {
+        lastAccess = System.nanoTime();
+    }
+
+    long getLastAccess() {
+        return lastAccess;
+    }
+
+    /**
+     * Estimates the heap retained by the cached template including its pre-encoded static texts but without the parsed
+     * template, which may be shared with other scripts.
+     *
+     * @return the estimated number of bytes
+     */
+    long getWeight() {
+        long staticTextWeight = 0;
+        for (final StaticText staticText : staticTexts.values()) {
+            staticTextWeight += staticText.getWeight();
+        }
+        return MemorySize.of(name) + staticTextWeight;
+    }
+
+    /**
+     * Estimates the heap retained by the parsed template.
+     *
+     * @return the estimated number of bytes
+     */
+    long getTemplateWeight() {
+        return weight;
+    }
+
+    /**
+     * Processes the template.
+     *
+     * @param dataModel   the data model
+     * @param writer      the writer to write the output to
+     * @param lazyImports whether imported libraries are executed only when their namespace is accessed, {@code false}
+     *                    keeps the setting of the template's configuration
+     * @throws TemplateException if processing the template fails
+     * @throws IOException       if writing the output fails
+     */
+    void process(final Object dataModel, final Writer writer, final boolean lazyImports) throws TemplateException, IOException {
+        process(dataModel, writer, lazyImports, null);
+    }
+
+    /**
+     * Processes the template or a single macro of it.
+     *
+     * @param dataModel   the data model
+     * @param writer      the writer to write the output to
+     * @param lazyImports whether imported libraries are executed only when their namespace is accessed, {@code false}
+     *                    keeps the setting of the template's configuration
+     * @param fragment    the name of the macro to render or {@code null} to render the whole template
+     * @throws TemplateException if the macro does not exist or processing the template fails
+     * @throws IOException       if writing the output fails
+     */
+    void process(final Object dataModel, final Writer writer, final boolean lazyImports, final String fragment) throws TemplateException, IOException {
+        final Template processed;
+        if (fragment == null) {
+            processed = template;
+        } else {
+            processed = fragment(fragment);
+        }
+        final Environment environment = processed.createProcessingEnvironment(dataModel, writer);
+        // enables lazy imports in addition to a configuration's setting but never disables them
+        if (lazyImports) {
+            environment.setLazyImports(true);
+        }
+        environment.setCustomAttribute(NAME_ATTRIBUTE_NAME, name);
+        try {
+            environment.process();
+        } finally {
+            JsonMethod.close(environment);
+        }
+    }
+
+    // the macros of the template are defined in the main namespace when the environment is created, so calling one
+    // renders the macro without executing the template itself, the imports are run first as macros may use them and
+    // resolve relative to the template's name
+    @SuppressWarnings("deprecation")
+    private Template fragment(final String fragment) throws TemplateException, IOException {
+        Template fragmentTemplate = fragments.get(fragment);
+        if (fragmentTemplate == null) {
+            if (!MACRO_NAME.matcher(fragment).matches() || !template.getMacros().containsKey(fragment)) {
+                throw new TemplateException(String.format("macro %s not found in template %s", fragment, name), null);
+            }
+            final StringBuilder source = new StringBuilder();
+            for (final Object libraryLoad : template.getImports()) {
+                source.append(((freemarker.core.TemplateObject) libraryLoad).getCanonicalForm());
+            }
+            source.append(String.format("<@%s/>", fragment));
+            fragmentTemplate = new Template(template.getName(), source.toString(), template.getConfiguration());
+            for (final Object macro : template.getMacros().values()) {
+                fragmentTemplate.addMacro((freemarker.core.Macro) macro);
+            }
+            fragments.put(fragment, fragmentTemplate);
+        }
+        return fragmentTemplate;
+    }
+
+    /**
+     * Returns the name of the script being processed in an environment.
+     *
+     * @param environment the environment
+     * @return the name of the script, which may differ from the name of a shared template
+     */
+    static String scriptName(final Environment environment) {
+        final Object name = environment.getCustomAttribute(NAME_ATTRIBUTE_NAME);
+        if (name instanceof String) {
+            return (String) name;
+        }
+        return environment.getCurrentTemplate().getName();
+    }
+
+    boolean isValid(final long lastModified, final Configuration configuration) {
+        return this.lastModified == lastModified && template.getConfiguration() == configuration;
+    }
+
+    /**
+     * Returns the static text segments of the template encoded in the given charset, encoding them on first use.
+     *
+     * @param charset the charset of the response
+     * @return the pre-encoded static text
+     */
+    StaticText getStaticText(final Charset charset) {
+        StaticText staticText = staticTexts.get(charset);
+        if (staticText == null) {
+            final StaticText encoded = new StaticText(texts, charset);
+            staticText = staticTexts.putIfAbsent(charset, encoded);
+            if (staticText == null) {
+                staticText = encoded;
+                staticTextAdded.accept(this, encoded.getWeight());
+            }
+        }
+        return staticText;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static void collectTexts(final Template template, final List<char[]> texts) {
+        collectTexts(template.getRootTreeNode(), texts);
+    }
+
+    @SuppressWarnings("deprecation")
+    private static void collectTexts(final freemarker.core.TemplateElement element, final List<char[]> texts) {
+        if (element == null) {
+            return;
+        }
+        if (element instanceof TextBlock) {
+            final char[] text = StaticText.text((TextBlock) element);
+            if (text != null) {
+                texts.add(text);
+            }
+        }
+        for (int i = 0; i < element.getChildCount(); i++) {
+            collectTexts((freemarker.core.TemplateElement) element.getChildAt(i), texts);
+        }
+    }
+
+}
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import org.apache.sling.api.SlingConstants;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Includes deferred until the top-level template has been rendered.
+ *
+ * <p>A deferred include writes a placeholder into the template's output. Its content is rendered after the template
+ * and written to the end of the response, followed by an inline script moving it into the placeholder, so the
+ * template's output is not held back by slow includes.
+ *
+ * <p>Limitations:
+ * <ul>
+ * <li>the content is written after the template's output, i.e. after the closing html tag, which browsers
+ * accept, but which is not valid HTML</li>
+ * <li>the inline scripts are blocked by a Content Security Policy without {@code 'unsafe-inline'} scripts, leaving
+ * the placeholders empty</li>
+ * <li>deferred includes are not rendered when rendering the template fails</li>
+ * <li>while output is captured, e.g. for {@code sling.cache}, includes are rendered in place, as a captured placeholder
+ * would be written without its content</li>
+ * </ul>
+ */
+final class DeferredIncludes {
+
+    private static final String ATTRIBUTE = "org.apache.sling.scripting.freemarker.deferred";
+
+    private static final String SWAP_SCRIPT = "<script>function slingDeferredSwap(i){var p=document.getElementById(\"sling-deferred-\"+i),c=document.getElementById(\"sling-deferred-content-\"+i);p.replaceWith(c.content);c.remove();}</script>";
+
+    private final SlingHttpServletRequest request;
+
+    private final List<Supplier<String>> includes = new ArrayList<>();
+
+    private int captures;
+
+    private final Logger logger = LoggerFactory.getLogger(DeferredIncludes.class);
+
+    private DeferredIncludes(final SlingHttpServletRequest request) {
+        this.request = request;
+    }
+
+    /**
+     * Starts collecting deferred includes for a rendering, if it is the top-level rendering of a request.
+     *
+     * @param request the current request, may be {@code null}
+     * @return the deferred includes of the rendering
+     */
+    static DeferredIncludes start(final SlingHttpServletRequest request) {
+        final DeferredIncludes deferredIncludes = new DeferredIncludes(request);
+        if (isTopLevel(request)) {
+            request.setAttribute(ATTRIBUTE, deferredIncludes);
+        }
+        return deferredIncludes;
+    }
+
+    /**
+     * Returns the deferred includes of the top-level rendering.
+     *
+     * @param request the current request
+     * @return the deferred includes or {@code null} if includes cannot be deferred, e.g. in an included rendering or
+     *     while output is captured
+     */
+    @SuppressWarnings("checkstyle:AvoidInlineConditionals")
+    static DeferredIncludes get(final SlingHttpServletRequest request) {
+        final DeferredIncludes deferredIncludes = isTopLevel(request) ? (DeferredIncludes) request.getAttribute(ATTRIBUTE) : null;
+        return !Objects.isNull(deferredIncludes) && deferredIncludes.captures == 0 ? deferredIncludes : null;
+    }
+
+    /**
+     * Suspends deferring includes of the top-level rendering while output is captured.
+     *
+     * @param request the current request, may be {@code null}
+     * @return the action resuming deferring includes
+     */
+    @SuppressWarnings("checkstyle:AvoidInlineConditionals")
+    static Runnable suspend(final SlingHttpServletRequest request) {
+        final DeferredIncludes deferredIncludes = isTopLevel(request) ? (DeferredIncludes) request.getAttribute(ATTRIBUTE) : null;
+        if (Objects.isNull(deferredIncludes)) {
+            return () -> { };
+        }
+        deferredIncludes.captures++;
+        return () -> deferredIncludes.captures--;
+    }
+
+    private static boolean isTopLevel(final SlingHttpServletRequest request) {
+        return request != null && request.getAttribute(SlingConstants.ATTR_REQUEST_SERVLET) == null;
+    }
+
+    /**
+     * Defers an include.
+     *
+     * @param include the include returning its content or {@code null} if including failed
+     * @return the placeholder to write instead of the content
+     */
+    String add(final Supplier<String> include) {
+        includes.add(include);
+        return String.format("<template id=\"sling-deferred-%s\"></template>", includes.size());
+    }
+
+    /**
+     * Renders the deferred includes and writes them with their swap scripts, flushing after each include.
+     *
+     * @param writer the writer of the top-level rendering
+     * @throws IOException if writing fails
+     */
+    void end(final Writer writer) throws IOException {
+        discard();
+        if (!includes.isEmpty()) {
+            writer.write(SWAP_SCRIPT);
+        }
+        for (int i = 1; i <= includes.size(); i++) {
+            final String content = includes.get(i - 1).get();
+            if (Objects.isNull(content)) {
+                logger.error("deferred include {} failed, content is null", i);
+                continue;
+            }
+            writer.write(String.format("<template id=\"sling-deferred-content-%s\">", i));
+            writer.write(content);
+            writer.write(String.format("</template><script>slingDeferredSwap(%s)</script>", i));
+            writer.flush();
+        }
+    }
+
+    /**
+     * Stops collecting deferred includes without rendering them, e.g. when rendering the template failed.
+     */
+    void discard() {
+        if (request != null && request.getAttribute(ATTRIBUTE) == this) {
+            request.removeAttribute(ATTRIBUTE);
+        }
+    }
+
+}
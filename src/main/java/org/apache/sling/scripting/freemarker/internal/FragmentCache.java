@@ -0,0 +1,365 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import javax.management.DynamicMBean;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.SlingConstants;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventConstants;
+import org.osgi.service.event.EventHandler;
+import org.osgi.service.metatype.annotations.Designate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded in-memory cache for rendered template fragments.
+ *
+ * <p>The cache is bounded by the estimated heap bytes retained by the cached fragments and evicts least recently used
+ * fragments first. Large fragments can be stored off-heap in direct buffers, bounded separately, and are decoded on
+ * every hit. Under memory pressure the cache sheds half of its estimated bytes. The direct buffers of shed or evicted
+ * fragments are only freed when they are garbage collected, so shedding relieves the heap but not the direct memory
+ * immediately.
+ *
+ * <p>Fragments expire after their time to live and are invalidated when a resource they depend on, one of its ancestors
+ * or one of its descendants changes. The keys of the fragments are indexed by the paths they depend on, so an
+ * invalidation looks up the changed path, its ancestors and its descendants instead of checking all fragments.
+ */
+@Component(
+    service = {
+        FragmentCache.class,
+        EventHandler.class
+    },
+    property = {
+        EventConstants.EVENT_TOPIC + "=org/apache/sling/api/resource/Resource/*"
+    }
+)
+@Designate(
+    ocd = FragmentCacheConfiguration.class
+)
+public final class FragmentCache implements EventHandler, CacheMBean {
+
+    private static final String MBEAN_NAME = "fragments";
+
+    private static final String SEPARATOR = "/";
+
+    @Reference
+    private MemoryPressure memoryPressure;
+
+    private final Map<String, Fragment> fragments = new LinkedHashMap<>(16, 0.75f, true);
+
+    // the keys of the fragments by the paths they depend on, sorted to find the descendants of a path
+    private final NavigableMap<String, Set<String>> keysByDependency = new TreeMap<>();
+
+    private final Runnable reliever = this::shed;
+
+    private ServiceRegistration<DynamicMBean> registration;
+
+    private long bytes;
+
+    private long offHeapBytes;
+
+    private long evictions;
+
+    private long maxBytes;
+
+    private long maxOffHeapBytes;
+
+    private int offHeapThreshold;
+
+    private final Logger logger = LoggerFactory.getLogger(FragmentCache.class);
+
+    public FragmentCache() { //
+    }
+
+    @Activate
+    @SuppressWarnings("unused")
+    private void activate(final FragmentCacheConfiguration configuration, final BundleContext bundleContext) {
+        logger.debug("activate");
+        configure(configuration);
+        memoryPressure.register(reliever);
+        registration = CacheMBeans.register(bundleContext, MBEAN_NAME, this);
+    }
+
+    @Modified
+    @SuppressWarnings("unused")
+    private void modified(final FragmentCacheConfiguration configuration) {
+        logger.debug("modified");
+        configure(configuration);
+    }
+
+    @Deactivate
+    @SuppressWarnings("unused")
+    private void deactivate() {
+        logger.debug("deactivate");
+        CacheMBeans.unregister(registration);
+        memoryPressure.unregister(reliever);
+        clear();
+    }
+
+    private synchronized void configure(final FragmentCacheConfiguration configuration) {
+        maxBytes = configuration.maxBytes();
+        maxOffHeapBytes = configuration.maxOffHeapBytes();
+        offHeapThreshold = configuration.offHeapThreshold();
+        evict(maxBytes, maxOffHeapBytes);
+    }
+
+    private synchronized void clear() {
+        fragments.clear();
+        keysByDependency.clear();
+        bytes = 0;
+        offHeapBytes = 0;
+    }
+
+    /**
+     * Gets a cached fragment.
+     *
+     * @param key the key of the fragment
+     * @return the output of the fragment or {@code null} if it is not cached or expired
+     */
+    @SuppressWarnings("checkstyle:AvoidInlineConditionals")
+    String get(final String key) {
+        final Fragment fragment;
+        synchronized (this) {
+            fragment = fragments.get(key);
+            if (!Objects.isNull(fragment) && fragment.isExpired(System.nanoTime())) {
+                remove(key);
+                return null;
+            }
+        }
+        // fragments stored off-heap are decoded outside of the lock
+        return Objects.isNull(fragment) ? null : fragment.content();
+    }
+
+    /**
+     * Caches a fragment, fragments larger than the cache are not cached.
+     *
+     * @param key       the key of the fragment
+     * @param content   the output of the fragment
+     * @param ttl       the time to live in nanoseconds, {@code 0} for no expiry
+     * @param dependsOn the paths of the resources the fragment depends on
+     */
+    @SuppressWarnings("checkstyle:AvoidInlineConditionals")
+    void put(final String key, final String content, final long ttl, final Collection<String> dependsOn) {
+        final long expires = ttl > 0 ? System.nanoTime() + ttl : 0;
+        final int threshold = offHeapThreshold();
+        final Fragment fragment = new Fragment(key, content, threshold > 0 && content.length() >= threshold, expires, dependsOn);
+        synchronized (this) {
+            remove(key);
+            if (fragment.weight > maxBytes || fragment.offHeapSize() > maxOffHeapBytes) {
+                return;
+            }
+            fragments.put(key, fragment);
+            for (final String dependency : fragment.dependsOn) {
+                keysByDependency.computeIfAbsent(dependency, d -> new HashSet<>()).add(key);
+            }
+            bytes += fragment.weight;
+            offHeapBytes += fragment.offHeapSize();
+            evict(maxBytes, maxOffHeapBytes);
+        }
+    }
+
+    private synchronized int offHeapThreshold() {
+        return offHeapThreshold;
+    }
+
+    @Override
+    public void handleEvent(final Event event) {
+        final Object path = event.getProperty(SlingConstants.PROPERTY_PATH);
+        if (path instanceof String) {
+            invalidate((String) path);
+        }
+    }
+
+    /**
+     * Invalidates all fragments depending on a resource, its ancestors or its descendants.
+     *
+     * @param path the path of the changed resource
+     */
+    synchronized void invalidate(final String path) {
+        final Set<String> keys = new HashSet<>();
+        for (String ancestor = path; !ancestor.isEmpty(); ancestor = parent(ancestor)) {
+            keys.addAll(keysByDependency.getOrDefault(ancestor, Collections.emptySet()));
+        }
+        final String prefix = StringUtils.appendIfMissing(path, SEPARATOR);
+        for (final Set<String> descendantKeys : keysByDependency.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+            keys.addAll(descendantKeys);
+        }
+        for (final String key : keys) {
+            remove(key);
+        }
+    }
+
+    // the parent path, empty for the root
+    @SuppressWarnings("checkstyle:AvoidInlineConditionals")
+    private static String parent(final String path) {
+        final int index = path.lastIndexOf('/');
+        if (index > 0) {
+            return path.substring(0, index);
+        }
+        return index == 0 && path.length() > 1 ? SEPARATOR : "";
+    }
+
+    /**
+     * Sheds the least recently used fragments until half of the estimated heap and off-heap bytes are released.
+     */
+    synchronized void shed() {
+        final int entries = fragments.size();
+        evict(bytes / 2, offHeapBytes / 2);
+        logger.debug("shed {} of {} fragments", entries - fragments.size(), entries);
+    }
+
+    private void remove(final String key) {
+        final Fragment fragment = fragments.remove(key);
+        if (!Objects.isNull(fragment)) {
+            release(fragment);
+        }
+    }
+
+    private void release(final Fragment fragment) {
+        for (final String dependency : fragment.dependsOn) {
+            final Set<String> keys = keysByDependency.get(dependency);
+            if (!Objects.isNull(keys) && keys.remove(fragment.key) && keys.isEmpty()) {
+                keysByDependency.remove(dependency);
+            }
+        }
+        bytes -= fragment.weight;
+        offHeapBytes -= fragment.offHeapSize();
+    }
+
+    // fragments stored on the heap are kept while only the off-heap bytes exceed their limit
+    private void evict(final long maxBytes, final long maxOffHeapBytes) {
+        final Iterator<Fragment> iterator = fragments.values().iterator();
+        while ((bytes > maxBytes || offHeapBytes > maxOffHeapBytes) && iterator.hasNext()) {
+            final Fragment fragment = iterator.next();
+            if (bytes > maxBytes || fragment.offHeapSize() > 0) {
+                iterator.remove();
+                release(fragment);
+                evictions++;
+            }
+        }
+    }
+
+    @Override
+    public synchronized int getEntries() {
+        return fragments.size();
+    }
+
+    @Override
+    public synchronized long getEstimatedBytes() {
+        return bytes;
+    }
+
+    @Override
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    @Override
+    public synchronized long getOffHeapBytes() {
+        return offHeapBytes;
+    }
+
+    @Override
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    private static final class Fragment {
+
+        private final String key;
+
+        private final String content;
+
+        // the content encoded as UTF-8 if stored off-heap
+        private final ByteBuffer buffer;
+
+        private final long expires;
+
+        private final Collection<String> dependsOn;
+
+        private final long weight;
+
+        @SuppressWarnings("checkstyle:AvoidInlineConditionals")
+        Fragment(final String key, final String content, final boolean offHeap, final long expires, final Collection<String> dependsOn) {
+            if (offHeap) {
+                final byte[] encoded = content.getBytes(StandardCharsets.UTF_8);
+                this.buffer = ByteBuffer.allocateDirect(encoded.length);
+                this.buffer.put(encoded).flip();
+                this.content = null;
+            } else {
+                this.buffer = null;
+                this.content = content;
+            }
+            this.key = key;
+            this.expires = expires;
+            this.dependsOn = dependsOn.stream().map(Fragment::normalize).collect(Collectors.toSet());
+            final long contentWeight = offHeap ? MemorySize.ofDirectBuffer() : MemorySize.of(content);
+            this.weight = MemorySize.ofEntry() + MemorySize.of(key) + MemorySize.of(dependsOn) + contentWeight;
+        }
+
+        // paths with a trailing slash are indexed without it, like the paths of changed resources
+        @SuppressWarnings("checkstyle:AvoidInlineConditionals")
+        private static String normalize(final String path) {
+            return path.length() > 1 ? StringUtils.removeEnd(path, SEPARATOR) : path;
+        }
+
+        String content() {
+            if (buffer == null) {
+                return content;
+            }
+            return StandardCharsets.UTF_8.decode(buffer.duplicate()).toString();
+        }
+
+        long offHeapSize() {
+            if (buffer == null) {
+                return 0;
+            }
+            return buffer.capacity();
+        }
+
+        boolean isExpired(final long now) {
+            return expires != 0 && now - expires >= 0;
+        }
+
+    }
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+@ObjectClassDefinition(
+    name = "Apache Sling Scripting FreeMarker Fragment Cache",
+    description = "Caches the output of template fragments rendered with the sling.cache directive"
+)
+@interface FragmentCacheConfiguration {
+
+    @AttributeDefinition(
+        name = "max bytes",
+        description = "maximum estimated heap bytes retained by all cached fragments, least recently used fragments are evicted first"
+    )
+    long maxBytes() default 16777216;
+
+    @AttributeDefinition(
+        name = "off-heap threshold",
+        description = "minimum length in characters of fragments stored off-heap in direct buffers encoded as UTF-8, 0 to keep all fragments on the heap"
+    )
+    int offHeapThreshold() default 0;
+
+    @AttributeDefinition(
+        name = "max off-heap bytes",
+        description = "maximum bytes of all fragments stored off-heap, least recently used fragments are evicted first"
+    )
+    long maxOffHeapBytes() default 67108864;
+
+}
@@ -16,17 +16,24 @@
  */
 package org.apache.sling.scripting.freemarker.internal;
 
+import java.io.IOException;
 import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
 
 import javax.script.Bindings;
 import javax.script.ScriptContext;
 import javax.script.ScriptException;
 
-import freemarker.template.Configuration;
-import freemarker.template.Template;
+import org.apache.sling.api.SlingConstants;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.scripting.SlingBindings;
 import org.apache.sling.api.scripting.SlingScriptHelper;
 import org.apache.sling.scripting.api.AbstractSlingScriptEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Script Engine using FreeMarker's templates.
@@ -35,6 +42,8 @@ public final class FreemarkerScriptEngine extends AbstractSlingScriptEngine {
 
     private final FreemarkerScriptEngineFactory freemarkerScriptEngineFactory;
 
+    private final Logger logger = LoggerFactory.getLogger(FreemarkerScriptEngine.class);
+
     public FreemarkerScriptEngine(final FreemarkerScriptEngineFactory freemarkerScriptEngineFactory) {
         super(freemarkerScriptEngineFactory);
         this.freemarkerScriptEngineFactory = freemarkerScriptEngineFactory;
@@ -48,22 +57,77 @@ public final class FreemarkerScriptEngine extends AbstractSlingScriptEngine {
             throw new ScriptException("SlingScriptHelper missing from bindings");
         }
 
-        bindings.putAll(freemarkerScriptEngineFactory.getTemplateModels());
-
-        final String scriptName = helper.getScript().getScriptResource().getPath();
-        final Configuration configuration = freemarkerScriptEngineFactory.getConfiguration();
+        final Resource scriptResource = freemarkerScriptEngineFactory.getTemplateCaches().scriptResource(helper.getScript().getScriptResource());
+        final String scriptName = scriptResource.getPath();
 
+        final long start = System.nanoTime();
+        final RenderTrace trace = RenderTrace.start(helper.getRequest(), String.format("render %s", scriptName), freemarkerScriptEngineFactory.isTraceAllocations());
+        final long templateModelsStart = trace.allocatedBytes();
+        bindings.putAll(freemarkerScriptEngineFactory.getTemplateModels());
+        trace.logAllocations("template models", templateModelsStart);
+        final DeferredIncludes deferredIncludes = DeferredIncludes.start(helper.getRequest());
         try {
-            final Template template = new Template(scriptName, reader, configuration);
-            template.process(bindings, scriptContext.getWriter());
+            final CachedTemplate cachedTemplate = freemarkerScriptEngineFactory.getTemplateCache(scriptName).getTemplate(scriptResource, reader, freemarkerScriptEngineFactory.getConfiguration(scriptName), trace);
+            final SlowRenderingLog slowRenderingLog = freemarkerScriptEngineFactory.getSlowRenderingLog();
+            final Writer output = writer(helper, cachedTemplate, scriptContext);
+            final HotspotWriter hotspotWriter = new HotspotWriter(output, slowRenderingLog.isEnabled(), freemarkerScriptEngineFactory.getTemplateProfiler(), scriptName);
+            final CountingWriter writer = new CountingWriter(hotspotWriter);
+            cachedTemplate.process(bindings, writer, freemarkerScriptEngineFactory.isLazyImports(), fragment(helper));
+            writer.flush();
+            deferredIncludes.end(writer);
+            end(trace, writer.getCount(), output);
+            slowRenderingLog.log(scriptName, helper.getRequest(), System.nanoTime() - start, trace.getStepTime(), hotspotWriter);
         } catch (Exception e) {
+            deferredIncludes.discard();
+            trace.end(", failed");
             final String message = String.format("Failure processing FreeMarker template %s.", scriptName);
             final ScriptException scriptException = new ScriptException(message);
             scriptException.initCause(e);
             throw scriptException;
+        } finally {
+            // the sling namespace of template models replaces the script helper which is required by Sling after evaluation
+            bindings.put(SlingBindings.SLING, helper);
+        }
+
+        return null;
+    }
+
+    private static void end(final RenderTrace trace, final long count, final Writer output) {
+        if (output instanceof PreEncodedTextWriter) {
+            final PreEncodedTextWriter preEncodedTextWriter = (PreEncodedTextWriter) output;
+            trace.end(", output {0} chars, {1} bytes of static text pre-encoded in {2}", count, preEncodedTextWriter.getPreEncodedBytes(), preEncodedTextWriter.getCharset());
+        } else {
+            trace.end(", output {0} chars", count);
         }
+    }
 
+    // renders only a selected macro of the template when enabled
+    private String fragment(final SlingScriptHelper helper) {
+        if (freemarkerScriptEngineFactory.isFragmentRendering()) {
+            return TemplateFragments.select(helper.getRequest(), freemarkerScriptEngineFactory.getFragmentMacros());
+        }
         return null;
     }
 
+    // writes pre-encoded static text to the response's output stream for top-level requests when enabled
+    private Writer writer(final SlingScriptHelper helper, final CachedTemplate cachedTemplate, final ScriptContext scriptContext) {
+        final SlingHttpServletRequest request = helper.getRequest();
+        final SlingHttpServletResponse response = helper.getResponse();
+        if (freemarkerScriptEngineFactory.isPreEncodeStaticText() && isTopLevel(request, response)) {
+            final String encoding = response.getCharacterEncoding();
+            try {
+                if (encoding != null && Charset.isSupported(encoding) && StaticText.supports(Charset.forName(encoding))) {
+                    return new PreEncodedTextWriter(response.getOutputStream(), cachedTemplate.getStaticText(Charset.forName(encoding)));
+                }
+            } catch (IllegalStateException | IOException e) {
+                logger.debug("response output stream not available, falling back to writer", e);
+            }
+        }
+        return scriptContext.getWriter();
+    }
+
+    private static boolean isTopLevel(final SlingHttpServletRequest request, final SlingHttpServletResponse response) {
+        return request != null && response != null && request.getAttribute(SlingConstants.ATTR_REQUEST_SERVLET) == null && !response.isCommitted();
+    }
+
 }
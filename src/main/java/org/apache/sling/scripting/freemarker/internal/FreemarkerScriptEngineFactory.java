@@ -19,8 +19,12 @@
 package org.apache.sling.scripting.freemarker.internal;
 
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineFactory;
@@ -50,7 +54,10 @@ import org.slf4j.LoggerFactory;
  * Factory for {@link FreemarkerScriptEngine}s.
  */
 @Component(
-    service = ScriptEngineFactory.class,
+    service = {
+        ScriptEngineFactory.class,
+        FreemarkerScriptEngineFactory.class
+    },
     immediate = true,
     property = {
         Constants.SERVICE_DESCRIPTION + "=Apache Sling Scripting FreeMarker ScriptEngineFactory",
@@ -68,16 +75,35 @@ public final class FreemarkerScriptEngineFactory extends AbstractScriptEngineFac
     @Reference(
         cardinality = ReferenceCardinality.OPTIONAL,
         policy = ReferencePolicy.DYNAMIC,
-        policyOption = ReferencePolicyOption.GREEDY
+        policyOption = ReferencePolicyOption.GREEDY,
+        target = "(!(" + TemplateCaches.PATHS + "=*))"
     )
     private volatile Configuration configuration;
 
+    @Reference
+    private TemplateProfiler templateProfiler;
+
+    @Reference
+    private TemplateCaches templateCaches;
+
     private BundleContext bundleContext;
 
     private SortingServiceTracker<TemplateModel> templateModelTracker;
 
     private final Configuration defaultConfiguration;
 
+    private final SlowRenderingLog slowRenderingLog = new SlowRenderingLog();
+
+    private volatile boolean preEncodeStaticText;
+
+    private volatile boolean lazyImports;
+
+    private volatile boolean fragmentRendering;
+
+    private volatile Set<String> fragmentMacros = Collections.emptySet();
+
+    private volatile boolean traceAllocations;
+
     private final Logger logger = LoggerFactory.getLogger(FreemarkerScriptEngineFactory.class);
 
     public FreemarkerScriptEngineFactory() {
@@ -117,6 +143,13 @@ public final class FreemarkerScriptEngineFactory extends AbstractScriptEngineFac
         setExtensions(configuration.extensions());
         setMimeTypes(configuration.mimeTypes());
         setNames(configuration.names());
+        preEncodeStaticText = configuration.preEncodeStaticText();
+        lazyImports = configuration.lazyImports();
+        fragmentRendering = configuration.fragmentRendering();
+        fragmentMacros = new HashSet<>(Arrays.asList(configuration.fragmentMacros()));
+        traceAllocations = configuration.traceAllocations();
+        templateCaches.configure(configuration.optimizeTemplates(), configuration.templateCacheSize(), configuration.templateCacheMaxBytes(), configuration.checkTemplates());
+        slowRenderingLog.configure(configuration.slowRenderingThreshold(), configuration.slowRenderingLogInterval());
     }
 
     public ScriptEngine getScriptEngine() {
@@ -140,6 +173,57 @@ public final class FreemarkerScriptEngineFactory extends AbstractScriptEngineFac
         }
     }
 
+    /**
+     * Gets the configuration for a script, which is the configuration of the tenant the script's path belongs to if any.
+     *
+     * @param path the path of the script
+     * @return the configuration
+     */
+    Configuration getConfiguration(final String path) {
+        final Configuration configuration = templateCaches.getConfiguration(path);
+        if (configuration != null) {
+            return configuration;
+        } else {
+            return getConfiguration();
+        }
+    }
+
+    boolean isPreEncodeStaticText() {
+        return preEncodeStaticText;
+    }
+
+    boolean isLazyImports() {
+        return lazyImports;
+    }
+
+    boolean isFragmentRendering() {
+        return fragmentRendering;
+    }
+
+    Set<String> getFragmentMacros() {
+        return fragmentMacros;
+    }
+
+    boolean isTraceAllocations() {
+        return traceAllocations;
+    }
+
+    TemplateCaches getTemplateCaches() {
+        return templateCaches;
+    }
+
+    TemplateCache getTemplateCache(final String path) {
+        return templateCaches.getTemplateCache(path);
+    }
+
+    SlowRenderingLog getSlowRenderingLog() {
+        return slowRenderingLog;
+    }
+
+    TemplateProfiler getTemplateProfiler() {
+        return templateProfiler;
+    }
+
     Map<String, Map<String, TemplateModel>> getTemplateModels() {
         final Map<String, Map<String, TemplateModel>> models = new HashMap<>();
         for (final ServiceReference<TemplateModel> serviceReference : templateModelTracker.getSortedServiceReferences()) {
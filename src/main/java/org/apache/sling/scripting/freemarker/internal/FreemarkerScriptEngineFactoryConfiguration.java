@@ -59,4 +59,70 @@ import org.osgi.service.metatype.annotations.ObjectClassDefinition;
         "freemarker"
     };
 
+    @AttributeDefinition(
+        name = "pre-encode static text",
+        description = "write pre-encoded static template text directly to the response output stream when the response allows it"
+    )
+    boolean preEncodeStaticText() default false;
+
+    @AttributeDefinition(
+        name = "lazy imports",
+        description = "execute imported libraries only when their namespace is accessed instead of on every import, configurations enabling lazy imports themselves are not overridden"
+    )
+    boolean lazyImports() default false;
+
+    @AttributeDefinition(
+        name = "optimize templates",
+        description = "remove comments, render constant string interpolations as static text and merge adjacent static text once after parsing"
+    )
+    boolean optimizeTemplates() default false;
+
+    @AttributeDefinition(
+        name = "check templates",
+        description = "log patterns expensive to render (e.g. adapting or including in loops) when templates are parsed into the template cache"
+    )
+    boolean checkTemplates() default false;
+
+    @AttributeDefinition(
+        name = "template cache size",
+        description = "maximum number of parsed templates cached for the default configuration, least recently used templates are evicted first, 0 for no limit"
+    )
+    int templateCacheSize() default 0;
+
+    @AttributeDefinition(
+        name = "template cache max bytes",
+        description = "maximum estimated heap bytes of parsed templates cached for the default configuration and for tenants without their own limit, least recently used templates are evicted first, 0 for no limit"
+    )
+    long templateCacheMaxBytes() default 67108864;
+
+    @AttributeDefinition(
+        name = "fragment rendering",
+        description = "render only the macro selected with a selector fragment-<macro> or the request attribute org.apache.sling.scripting.freemarker.fragment instead of the whole template"
+    )
+    boolean fragmentRendering() default false;
+
+    @AttributeDefinition(
+        name = "fragment macros",
+        description = "names of the macros which can be selected for fragment rendering, no macro can be selected if empty"
+    )
+    String[] fragmentMacros() default {};
+
+    @AttributeDefinition(
+        name = "slow rendering threshold",
+        description = "renderings taking longer than this number of milliseconds are logged with the instruction writing after the longest pause, 0 disables logging"
+    )
+    long slowRenderingThreshold() default 0;
+
+    @AttributeDefinition(
+        name = "slow rendering log interval",
+        description = "minimum number of seconds between two logs of slow renderings of the same script"
+    )
+    long slowRenderingLogInterval() default 60;
+
+    @AttributeDefinition(
+        name = "trace allocations",
+        description = "log the bytes allocated by renderings, their template models and includes in the request progress tracker, for diagnostics only"
+    )
+    boolean traceAllocations() default false;
+
 }
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.servlets.ServletResolver;
+import org.apache.sling.scripting.api.BindingsValuesProvidersByContext;
+import org.apache.sling.scripting.freemarker.StaticExportListener;
+import org.apache.sling.scripting.freemarker.StaticExporter;
+import org.apache.sling.scripting.freemarker.TemplateRenderer;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.Designate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Exports resource trees to static files, rendering the resources in parallel with the {@link TemplateRenderer} and
+ * the scripts resolved by the {@link ServletResolver}.
+ */
+@Component(
+    service = StaticExporter.class
+)
+@Designate(
+    ocd = FreemarkerStaticExporterConfiguration.class
+)
+public final class FreemarkerStaticExporter implements StaticExporter {
+
+    @Reference
+    private TemplateRenderer templateRenderer;
+
+    @Reference
+    private ServletResolver servletResolver;
+
+    @Reference
+    private BindingsValuesProvidersByContext bindingsValuesProvidersByContext;
+
+    @Reference
+    private FreemarkerScriptEngineFactory freemarkerScriptEngineFactory;
+
+    private volatile int parallelism;
+
+    private final Logger logger = LoggerFactory.getLogger(FreemarkerStaticExporter.class);
+
+    public FreemarkerStaticExporter() { //
+    }
+
+    @Activate
+    @SuppressWarnings("unused")
+    private void activate(final FreemarkerStaticExporterConfiguration configuration) {
+        logger.debug("activate");
+        configure(configuration);
+    }
+
+    @Modified
+    @SuppressWarnings("unused")
+    private void modified(final FreemarkerStaticExporterConfiguration configuration) {
+        logger.debug("modified");
+        configure(configuration);
+    }
+
+    @SuppressWarnings("checkstyle:AvoidInlineConditionals")
+    private void configure(final FreemarkerStaticExporterConfiguration configuration) {
+        parallelism = configuration.parallelism() > 0 ? configuration.parallelism() : Runtime.getRuntime().availableProcessors();
+    }
+
+    @Override
+    public int export(final ResourceResolver resourceResolver, final String path, final Path directory, final StaticExportListener listener) throws IOException {
+        final long start = System.nanoTime();
+        final Map<String, String> scripts = ScriptCollector.collect(resourceResolver, path, servletResolver);
+        final StaticExportBindings bindings = new StaticExportBindings(bindingsValuesProvidersByContext, freemarkerScriptEngineFactory);
+        final int threads = Math.max(1, Math.min(parallelism, scripts.size()));
+        try (StaticExport export = new StaticExport(templateRenderer, bindings, resourceResolver, threads, directory.toAbsolutePath().normalize(), listener, scripts.size())) {
+            final int exported = export.exportAll(scripts);
+            logger.info("exported {} of {} resources below {} to {} in {} ms", exported, scripts.size(), path, directory, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return exported;
+        } catch (LoginException e) {
+            throw new IOException(String.format("cloning resource resolver for exporting %s failed", path), e);
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import freemarker.core.ParseException;
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.scripting.freemarker.TemplateFinding;
+import org.apache.sling.scripting.freemarker.TemplateLinter;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+/**
+ * Checks FreeMarker templates parsed with the {@link FreemarkerScriptEngineFactory}'s configuration for patterns
+ * expensive to render.
+ */
+@Component(
+    service = TemplateLinter.class
+)
+public final class FreemarkerTemplateLinter implements TemplateLinter {
+
+    private static final String EXTENSION = ".ftl";
+
+    @Reference
+    private FreemarkerScriptEngineFactory freemarkerScriptEngineFactory;
+
+    public FreemarkerTemplateLinter() { //
+    }
+
+    @Override
+    public List<TemplateFinding> lint(final ResourceResolver resourceResolver, final String path) throws IOException {
+        final Resource resource = resourceResolver.getResource(path);
+        if (resource == null) {
+            throw new FileNotFoundException(String.format("path %s not found", path));
+        }
+        final List<TemplateFinding> findings = new ArrayList<>();
+        lint(resource, findings);
+        return findings;
+    }
+
+    @Override
+    public List<TemplateFinding> lint(final String name, final Reader reader) throws IOException {
+        return lint(name, reader, freemarkerScriptEngineFactory.getConfiguration(name));
+    }
+
+    private void lint(final Resource resource, final List<TemplateFinding> findings) throws IOException {
+        InputStream inputStream = null;
+        if (resource.getName().endsWith(EXTENSION)) {
+            inputStream = resource.adaptTo(InputStream.class);
+        }
+        if (inputStream != null) {
+            final Configuration configuration = freemarkerScriptEngineFactory.getConfiguration(resource.getPath());
+            try (InputStream stream = inputStream; Reader reader = new InputStreamReader(stream, configuration.getDefaultEncoding())) {
+                findings.addAll(lint(resource.getPath(), reader, configuration));
+            }
+        } else {
+            for (final Resource child : resource.getChildren()) {
+                lint(child, findings);
+            }
+        }
+    }
+
+    private List<TemplateFinding> lint(final String name, final Reader reader, final Configuration configuration) throws IOException {
+        try {
+            return TemplateAnalyzer.analyze(new Template(name, reader, configuration));
+        } catch (ParseException e) {
+            return Collections.singletonList(new TemplateFinding(name, e.getLineNumber(), e.getColumnNumber(), TemplateFinding.Rule.PARSE_ERROR, e.getEditorMessage(), 0));
+        }
+    }
+
+}
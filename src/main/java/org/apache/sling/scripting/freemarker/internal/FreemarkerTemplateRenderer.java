@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import freemarker.template.Configuration;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateModel;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.scripting.freemarker.TemplateRenderer;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+/**
+ * Renders FreeMarker templates outside of requests with the {@link FreemarkerScriptEngineFactory}'s configuration,
+ * template models and template cache.
+ */
+@Component(
+    service = TemplateRenderer.class
+)
+public final class FreemarkerTemplateRenderer implements TemplateRenderer {
+
+    @Reference
+    private FreemarkerScriptEngineFactory freemarkerScriptEngineFactory;
+
+    public FreemarkerTemplateRenderer() { //
+    }
+
+    @Override
+    public void render(final ResourceResolver resourceResolver, final String path, final Map<String, Object> dataModel, final Writer writer) throws IOException {
+        final CachedTemplate cachedTemplate = template(resourceResolver, path);
+        process(cachedTemplate, dataModel, freemarkerScriptEngineFactory.getTemplateModels(), writer);
+    }
+
+    @Override
+    public void render(final ResourceResolver resourceResolver, final String path, final Map<String, Object> dataModel, final OutputStream outputStream, final Charset charset) throws IOException {
+        final Writer writer = new OutputStreamWriter(outputStream, charset);
+        render(resourceResolver, path, dataModel, writer);
+        writer.flush();
+    }
+
+    @Override
+    public List<String> render(final ResourceResolver resourceResolver, final String path, final List<Map<String, Object>> dataModels) throws IOException {
+        final CachedTemplate cachedTemplate = template(resourceResolver, path);
+        final Map<String, Map<String, TemplateModel>> templateModels = freemarkerScriptEngineFactory.getTemplateModels();
+        final List<String> outputs = new ArrayList<>(dataModels.size());
+        for (final Map<String, Object> dataModel : dataModels) {
+            final StringWriter writer = new StringWriter();
+            process(cachedTemplate, dataModel, templateModels, writer);
+            outputs.add(writer.toString());
+        }
+        return outputs;
+    }
+
+    private CachedTemplate template(final ResourceResolver resourceResolver, final String path) throws IOException {
+        final Resource resource = resourceResolver.getResource(path);
+        if (resource == null) {
+            throw new FileNotFoundException(String.format("template %s not found", path));
+        }
+        final InputStream inputStream = resource.adaptTo(InputStream.class);
+        if (inputStream == null) {
+            throw new FileNotFoundException(String.format("template %s has no content", path));
+        }
+        final Configuration configuration = freemarkerScriptEngineFactory.getConfiguration(path);
+        try (Reader reader = new InputStreamReader(inputStream, configuration.getDefaultEncoding())) {
+            return freemarkerScriptEngineFactory.getTemplateCache(path).getTemplate(resource, reader, configuration);
+        }
+    }
+
+    // keys of the data model take precedence over the namespaces of template models
+    private void process(final CachedTemplate cachedTemplate, final Map<String, Object> dataModel, final Map<String, Map<String, TemplateModel>> templateModels, final Writer writer) throws IOException {
+        final Map<String, Object> model = new HashMap<>(templateModels);
+        model.putAll(dataModel);
+        try {
+            cachedTemplate.process(model, writer, freemarkerScriptEngineFactory.isLazyImports());
+        } catch (TemplateException e) {
+            throw new IOException(String.format("Failure processing FreeMarker template %s.", cachedTemplate.getName()), e);
+        }
+    }
+
+}
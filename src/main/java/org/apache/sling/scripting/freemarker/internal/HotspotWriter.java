@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import freemarker.core.Environment;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Writer timing the instructions of a rendering by the time passed between writes, for locating the slowest
+ * instruction and for profiling.
+ *
+ * <p>Instructions write their output when done, so the instruction writing after the longest pause is the one which
+ * took the most time, e.g. an interpolation calling an expensive method or an include.
+ */
+final class HotspotWriter extends FilterWriter {
+
+    private final boolean enabled;
+
+    private final TemplateProfiler templateProfiler;
+
+    private final boolean profiling;
+
+    private final String script;
+
+    private long last;
+
+    private long slowestTime;
+
+    private String slowestInstruction;
+
+    HotspotWriter(final Writer writer, final boolean enabled, final TemplateProfiler templateProfiler, final String script) {
+        super(writer);
+        this.enabled = enabled;
+        this.templateProfiler = templateProfiler;
+        this.profiling = templateProfiler.isEnabled();
+        this.script = script;
+        last = System.nanoTime();
+    }
+
+    long getSlowestTime() {
+        return slowestTime;
+    }
+
+    String getSlowestInstruction() {
+        return slowestInstruction;
+    }
+
+    @Override
+    public void write(final int c) throws IOException {
+        mark();
+        out.write(c);
+        reset();
+    }
+
+    @Override
+    public void write(final char[] cbuf, final int off, final int len) throws IOException {
+        mark();
+        out.write(cbuf, off, len);
+        reset();
+    }
+
+    @Override
+    public void write(final String str, final int off, final int len) throws IOException {
+        mark();
+        out.write(str, off, len);
+        reset();
+    }
+
+    private void mark() {
+        if (enabled || profiling) {
+            final long time = System.nanoTime() - last;
+            // describing the instruction stack is expensive, only done for sampled and slowest writes
+            String stack = null;
+            if (profiling && templateProfiler.isSampled()) {
+                stack = instructionStack();
+                templateProfiler.addTime(script, stack, time);
+            }
+            if (enabled && time > slowestTime) {
+                slowestTime = time;
+                slowestInstruction = innermostInstruction(stack);
+            }
+        }
+    }
+
+    private void reset() {
+        if (enabled || profiling) {
+            last = System.nanoTime();
+        }
+    }
+
+    @SuppressWarnings("checkstyle:AvoidInlineConditionals")
+    private static String innermostInstruction(final String stack) {
+        final String instructions = stack != null ? stack : instructionStack();
+        return StringUtils.substringAfter(StringUtils.substringBefore(instructions, System.lineSeparator()), ": ").trim();
+    }
+
+    // describes the current instructions (innermost first) with their template locations, e.g. ${x}  [in template "a.ftl" at line 1, column 3]
+    private static String instructionStack() {
+        final Environment environment = Environment.getCurrentEnvironment();
+        final StringWriter stack = new StringWriter();
+        if (environment != null) {
+            environment.outputInstructionStack(new PrintWriter(stack));
+        }
+        return stack.toString();
+    }
+
+}
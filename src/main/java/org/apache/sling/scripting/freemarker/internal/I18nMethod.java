@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.text.MessageFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+
+import freemarker.core.Environment;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateMethodModelEx;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.utility.DeepUnwrap;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.osgi.service.component.annotations.Component;
+
+/**
+ * Localized messages in FreeMarker templates.
+ *
+ * <p>The resource bundle for the request's locale is resolved once per rendering. Messages are always formatted with
+ * {@link MessageFormat}, with or without arguments, so quoting is the same in both cases. Message patterns are parsed
+ * once per locale and key and reused across requests, a pattern is parsed again when the message in the bundle
+ * changes. The least recently used patterns of a locale are evicted when it has reached its maximum number of patterns.
+ * Messages missing in the bundle fall back to the key.
+ */
+@Component(
+    service = {
+        TemplateModel.class
+    },
+    property = {
+        "namespace=sling",
+        "name=i18n"
+    }
+)
+public final class I18nMethod implements TemplateMethodModelEx {
+
+    private static final String BUNDLE_ATTRIBUTE_NAME = I18nMethod.class.getName();
+
+    private static final int MAX_PATTERNS_PER_LOCALE = 4096;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    // the patterns of a locale by key in access order
+    private final Map<Locale, Map<String, Pattern>> patterns = new ConcurrentHashMap<>();
+
+    public I18nMethod() { //
+    }
+
+    @Override
+    public Object exec(final List arguments) throws TemplateModelException {
+        if (arguments.isEmpty()) {
+            throw new TemplateModelException("wrong number of arguments, expecting at least 1 (key).");
+        }
+        final String key = String.valueOf(DeepUnwrap.unwrap((TemplateModel) arguments.get(0)));
+        final Bundle bundle = bundle(Environment.getCurrentEnvironment());
+        final String message = bundle.message(key);
+        final Object[] values = new Object[arguments.size() - 1];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = DeepUnwrap.unwrap((TemplateModel) arguments.get(i + 1));
+        }
+        return pattern(bundle.locale, key, message).format(values);
+    }
+
+    private static Bundle bundle(final Environment environment) throws TemplateModelException {
+        Bundle bundle = (Bundle) environment.getCustomAttribute(BUNDLE_ATTRIBUTE_NAME);
+        if (Objects.isNull(bundle)) {
+            try {
+                final SlingHttpServletRequest request = IncludeSupport.request(environment);
+                bundle = new Bundle(request.getResourceBundle(request.getLocale()), request.getLocale());
+            } catch (TemplateException e) {
+                throw new TemplateModelException(e);
+            }
+            environment.setCustomAttribute(BUNDLE_ATTRIBUTE_NAME, bundle);
+        }
+        return bundle;
+    }
+
+    // patterns are parsed outside of the lock of the locale's patterns
+    private MessageFormat pattern(final Locale locale, final String key, final String message) {
+        final Map<String, Pattern> localePatterns = patterns.computeIfAbsent(locale, l -> new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, true));
+        Pattern pattern;
+        synchronized (localePatterns) {
+            pattern = localePatterns.get(key);
+        }
+        // parse again when the message changed in the i18n resources
+        if (Objects.isNull(pattern) || !pattern.message.equals(message)) {
+            pattern = new Pattern(message, new MessageFormat(message, locale));
+            synchronized (localePatterns) {
+                localePatterns.put(key, pattern);
+                if (localePatterns.size() > MAX_PATTERNS_PER_LOCALE) {
+                    final Iterator<String> iterator = localePatterns.keySet().iterator();
+                    iterator.next();
+                    iterator.remove();
+                }
+            }
+        }
+        // MessageFormat is not thread-safe
+        return (MessageFormat) pattern.format.clone();
+    }
+
+    private static final class Bundle {
+
+        private final ResourceBundle resourceBundle;
+
+        private final Locale locale;
+
+        @SuppressWarnings("checkstyle:AvoidInlineConditionals")
+        Bundle(final ResourceBundle resourceBundle, final Locale requestLocale) {
+            this.resourceBundle = resourceBundle;
+            final Locale bundleLocale = Objects.isNull(resourceBundle) ? null : resourceBundle.getLocale();
+            this.locale = Objects.isNull(bundleLocale) ? requestLocale : bundleLocale;
+        }
+
+        @SuppressWarnings("checkstyle:AvoidInlineConditionals")
+        String message(final String key) {
+            return Objects.nonNull(resourceBundle) && resourceBundle.containsKey(key) ? resourceBundle.getString(key) : key;
+        }
+
+    }
+
+    private static final class Pattern {
+
+        private final String message;
+
+        private final MessageFormat format;
+
+        Pattern(final String message, final MessageFormat format) {
+            this.message = message;
+            this.format = format;
+        }
+
+    }
+
+}
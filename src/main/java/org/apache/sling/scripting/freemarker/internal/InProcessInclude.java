@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.io.IOException;
+import java.util.Objects;
+
+import freemarker.core.Environment;
+import freemarker.template.TemplateException;
+import org.apache.sling.api.SlingConstants;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.request.RequestDispatcherOptions;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.scripting.SlingScript;
+import org.apache.sling.api.servlets.ServletResolver;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.Designate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Renders includes of resources with FreeMarker scripts directly into the output of the including template.
+ *
+ * <p>The included resource, selectors, suffix and resource type are derived from the request dispatcher options like
+ * Sling's request dispatcher does. When the servlet resolved for them is a FreeMarker script, the script is evaluated
+ * with the bindings of the include and writes to the including template's output, which avoids dispatching the request
+ * and capturing the included output. Request filters are not applied to includes rendered in process.
+ *
+ * <p>As Sling's recursion guards do not apply to includes rendered in process, their nesting depth is counted in a
+ * request attribute and limited. Includes resolved to other servlets are remembered by {@link InProcessScripts}, so
+ * their servlets are resolved by the dispatcher only.
+ *
+ * <p>The time spent in includes rendered in process is recorded by the {@link IncludeCircuitBreaker}'s timer like the
+ * time spent in dispatched includes.
+ */
+@Component(
+    service = InProcessInclude.class
+)
+@Designate(
+    ocd = InProcessIncludeConfiguration.class
+)
+public final class InProcessInclude {
+
+    private static final String DEPTH_ATTRIBUTE_NAME = InProcessInclude.class.getName().concat(".depth");
+
+    private final InProcessScripts inProcessScripts = new InProcessScripts();
+
+    @Reference
+    private ServletResolver servletResolver;
+
+    @Reference
+    private IncludeCircuitBreaker includeCircuitBreaker;
+
+    private volatile boolean enabled;
+
+    private volatile int maxDepth;
+
+    private final Logger logger = LoggerFactory.getLogger(InProcessInclude.class);
+
+    public InProcessInclude() { //
+    }
+
+    @Activate
+    @SuppressWarnings("unused")
+    private void activate(final InProcessIncludeConfiguration configuration) {
+        logger.debug("activate");
+        configure(configuration);
+    }
+
+    @Modified
+    @SuppressWarnings("unused")
+    private void modified(final InProcessIncludeConfiguration configuration) {
+        logger.debug("modified");
+        configure(configuration);
+    }
+
+    private void configure(final InProcessIncludeConfiguration configuration) {
+        enabled = configuration.enabled();
+        maxDepth = configuration.maxDepth();
+        inProcessScripts.clear();
+    }
+
+    /**
+     * Renders an include in process if enabled and the included resource is rendered by a FreeMarker script.
+     *
+     * @param include     the included resource or path
+     * @param options     the request dispatcher options
+     * @param request     the including request
+     * @param response    the including response
+     * @param environment the environment of the including template
+     * @return {@code true} if the include was rendered, {@code false} if it has to be dispatched
+     * @throws TemplateException if rendering the include failed or the includes are nested too deeply
+     * @throws IOException       if writing the output failed
+     */
+    @SuppressWarnings("checkstyle:AvoidInlineConditionals")
+    boolean include(final Object include, final RequestDispatcherOptions options, final SlingHttpServletRequest request, final SlingHttpServletResponse response, final Environment environment) throws TemplateException, IOException {
+        final Resource resource = enabled ? IncludeSupport.resolve(include, request) : null;
+        final IncludeRequestWrapper includeRequest = Objects.isNull(resource) ? null : inProcessScripts.resolve(servletResolver, resource, options, request);
+        if (Objects.isNull(includeRequest)) {
+            return false;
+        }
+        final SlingScript script = (SlingScript) includeRequest.getAttribute(SlingConstants.ATTR_REQUEST_SERVLET);
+        final int depth = depth(request);
+        if (depth >= maxDepth) {
+            throw new TemplateException(String.format("including %s in process exceeds the maximum depth of %d nested includes", resource.getPath(), maxDepth), environment);
+        }
+        final RenderTrace trace = RenderTrace.start(request, String.format("include %s in process", resource.getPath()));
+        request.setAttribute(DEPTH_ATTRIBUTE_NAME, depth + 1);
+        final long start = System.nanoTime();
+        try {
+            IncludeSupport.eval(script, includeRequest, response, environment);
+        } finally {
+            includeCircuitBreaker.rendered(System.nanoTime() - start);
+            request.setAttribute(DEPTH_ATTRIBUTE_NAME, depth);
+            trace.end(", script {0}", script.getScriptResource().getPath());
+        }
+        return true;
+    }
+
+    private static int depth(final SlingHttpServletRequest request) {
+        final Object depth = request.getAttribute(DEPTH_ATTRIBUTE_NAME);
+        if (depth instanceof Integer) {
+            return (Integer) depth;
+        }
+        return 0;
+    }
+
+}
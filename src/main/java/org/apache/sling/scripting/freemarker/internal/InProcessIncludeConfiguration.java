@@ -0,0 +1,42 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+@ObjectClassDefinition(
+    name = "Apache Sling Scripting FreeMarker In-Process Include",
+    description = "Renders includes of resources with FreeMarker scripts directly into the including template"
+)
+@interface InProcessIncludeConfiguration {
+
+    @AttributeDefinition(
+        name = "enabled",
+        description = "render includes without timeout, fallback or deferral in process when the included resource is rendered by a FreeMarker script, request filters are not applied to those includes"
+    )
+    boolean enabled() default false;
+
+    @AttributeDefinition(
+        name = "max depth",
+        description = "maximum number of nested includes rendered in process, like Sling's maximum number of nested includes for dispatched ones"
+    )
+    int maxDepth() default 50;
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.Servlet;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.request.RequestDispatcherOptions;
+import org.apache.sling.api.request.RequestPathInfo;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.scripting.SlingScript;
+import org.apache.sling.api.servlets.ServletResolver;
+
+/**
+ * Resolves the FreeMarker scripts of includes rendered in process.
+ *
+ * <p>The keys (resource type and super type, selectors, extension and method) of includes resolved to other servlets
+ * are remembered, bounded and evicting the least recently used first, so those includes are dispatched without
+ * resolving their servlet twice. A key stays when servlets or scripts change, as a stale key only costs dispatching an
+ * include which could have been rendered in process.
+ */
+final class InProcessScripts {
+
+    private static final String FREEMARKER_SCRIPT_EXTENSION = ".ftl";
+
+    private static final int MAX_DISPATCHED_KEYS = 1000;
+
+    private final Map<String, Boolean> dispatchedKeys = new LinkedHashMap<>(16, 0.75f, true);
+
+    InProcessScripts() { //
+    }
+
+    /**
+     * Resolves the script of an include if it is a FreeMarker script.
+     *
+     * @param servletResolver  the servlet resolver
+     * @param resource         the included resource
+     * @param options          the request dispatcher options of the include
+     * @param includingRequest the including request
+     * @return the request of the include with the FreeMarker script or {@code null} if the include is rendered otherwise
+     */
+    IncludeRequestWrapper resolve(final ServletResolver servletResolver, final Resource resource, final RequestDispatcherOptions options, final SlingHttpServletRequest includingRequest) {
+        final IncludeRequestPathInfo requestPathInfo = IncludeRequestPathInfo.merge(resource, includingRequest.getRequestPathInfo(), options);
+        final IncludeRequestWrapper request = new IncludeRequestWrapper(includingRequest, resource, requestPathInfo, options.getForceResourceType(), null);
+        final String key = key(request);
+        IncludeRequestWrapper includeRequest = null;
+        if (!isDispatched(key)) {
+            final Servlet servlet = servletResolver.resolveServlet(request);
+            if (servlet instanceof SlingScript && ((SlingScript) servlet).getScriptResource().getPath().endsWith(FREEMARKER_SCRIPT_EXTENSION)) {
+                includeRequest = request.withServlet(servlet);
+            } else {
+                dispatched(key);
+            }
+        }
+        return includeRequest;
+    }
+
+    synchronized void clear() {
+        dispatchedKeys.clear();
+    }
+
+    private static String key(final SlingHttpServletRequest request) {
+        final Resource resource = request.getResource();
+        final RequestPathInfo requestPathInfo = request.getRequestPathInfo();
+        return String.join("\n", resource.getResourceType(), String.valueOf(resource.getResourceSuperType()), String.valueOf(requestPathInfo.getSelectorString()), String.valueOf(requestPathInfo.getExtension()), request.getMethod());
+    }
+
+    private synchronized boolean isDispatched(final String key) {
+        return dispatchedKeys.containsKey(key);
+    }
+
+    private synchronized void dispatched(final String key) {
+        dispatchedKeys.put(key, Boolean.TRUE);
+        if (dispatchedKeys.size() > MAX_DISPATCHED_KEYS) {
+            final Iterator<String> iterator = dispatchedKeys.keySet().iterator();
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+
+
+import freemarker.core.Environment;
+import freemarker.template.TemplateDirectiveBody;
+import freemarker.template.TemplateDirectiveModel;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateModel;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.request.RequestDispatcherOptions;
+import org.apache.sling.api.resource.Resource;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+/**
+ * Support for including a collection of Resources or paths with shared options in FreeMarker templates.
+ *
+ * <p>Request, response and options are resolved once for all includes. Each include is rendered like a single
+ * {@code sling.include} with the same {@code timeout} and {@code fallback} guarding it, in process if possible, and
+ * its output is captured or, with {@code stream=true}, written directly to the template's output. Guarded includes are
+ * always captured as their output may be discarded.
+ */
+@Component(
+    service = {
+        TemplateModel.class
+    },
+    property = {
+        "namespace=sling",
+        "name=includeAll"
+    }
+)
+public final class IncludeAllDirective implements TemplateDirectiveModel {
+
+    private static final String INCLUDE_ALL_PARAMETER_NAME = "includeAll";
+
+    private static final String SEPARATOR_PARAMETER_NAME = "separator";
+
+    private static final String STREAM_PARAMETER_NAME = "stream";
+
+    private static final String TIMEOUT_PARAMETER_NAME = "timeout";
+
+    private static final String FALLBACK_PARAMETER_NAME = "fallback";
+
+    @Reference
+    private IncludeCircuitBreaker includeCircuitBreaker;
+
+    @Reference
+    private InProcessInclude inProcessInclude;
+
+    public IncludeAllDirective() { //
+    }
+
+    @Override
+    public void execute(final Environment environment, final Map parameters, final TemplateModel[] loopVars, final TemplateDirectiveBody body) throws TemplateException, IOException {
+        final SlingHttpServletRequest slingHttpServletRequest = IncludeSupport.request(environment);
+        final Iterator<?> includes = iterator(IncludeSupport.unwrapParameter(INCLUDE_ALL_PARAMETER_NAME, parameters), environment);
+        final RequestDispatcherOptions requestDispatcherOptions = IncludeSupport.requestDispatcherOptions(parameters);
+        final String separator = (String) IncludeSupport.unwrapParameter(SEPARATOR_PARAMETER_NAME, parameters);
+        final Options options = new Options(
+            requestDispatcherOptions,
+            IncludeSupport.unwrapParameter(TIMEOUT_PARAMETER_NAME, parameters),
+            IncludeSupport.unwrapParameter(FALLBACK_PARAMETER_NAME, parameters),
+            Boolean.TRUE.equals(IncludeSupport.unwrapParameter(STREAM_PARAMETER_NAME, parameters))
+        );
+
+        final RenderTrace trace = RenderTrace.start(slingHttpServletRequest, "include all");
+        int count = 0;
+        try {
+            while (includes.hasNext()) {
+                if (count > 0 && !Objects.isNull(separator)) {
+                    environment.getOut().write(separator);
+                }
+                include(includes.next(), options, environment);
+                count++;
+            }
+        } finally {
+            trace.end(", {0} includes, addSelectors {1}, replaceSelectors {2}, resourceType {3}",
+                count,
+                requestDispatcherOptions.getAddSelectors(),
+                requestDispatcherOptions.getReplaceSelectors(),
+                requestDispatcherOptions.getForceResourceType()
+            );
+        }
+    }
+
+    private static Iterator<?> iterator(final Object includes, final Environment environment) throws TemplateException {
+        final Iterator<?> iterator;
+        if (includes instanceof Iterable) {
+            iterator = ((Iterable<?>) includes).iterator();
+        } else if (includes instanceof Iterator) {
+            iterator = (Iterator<?>) includes;
+        } else if (includes instanceof Object[]) {
+            iterator = Arrays.asList((Object[]) includes).iterator();
+        } else {
+            throw new TemplateException("includeAll is not a collection of resources or paths", environment);
+        }
+        return iterator;
+    }
+
+    // includes a single resource or path like the include directive
+    @SuppressWarnings("checkstyle:AvoidInlineConditionals")
+    private void include(final Object include, final Options options, final Environment environment) throws TemplateException, IOException {
+        final SlingHttpServletRequest slingHttpServletRequest = IncludeSupport.request(environment);
+        final SlingHttpServletResponse slingHttpServletResponse = IncludeSupport.response(environment);
+        final Resource resource = include instanceof Resource ? (Resource) include : null;
+        final String path = include instanceof String ? (String) include : null;
+        if (Objects.isNull(resource) && Objects.isNull(path)) {
+            throw new TemplateException(String.format("include '%s' is neither a resource nor a path", include), environment);
+        }
+        final String target = Objects.isNull(resource) ? IncludeSupport.absolutePath(path, slingHttpServletRequest) : resource.getPath();
+        if (options.isGuarded() || !inProcessInclude.include(include, options.requestDispatcherOptions, slingHttpServletRequest, slingHttpServletResponse, environment)) {
+            final Writer writer = options.isStreamed() ? environment.getOut() : null;
+            final String content = includeCircuitBreaker.guard(target, () -> IncludeSupport.include(resource, path, options.requestDispatcherOptions, slingHttpServletRequest, slingHttpServletResponse, writer), options.timeout, options.fallback).get();
+            IncludeSupport.write(content, environment);
+        }
+    }
+
+    /**
+     * The options shared by all includes.
+     */
+    private static final class Options {
+
+        private final RequestDispatcherOptions requestDispatcherOptions;
+
+        private final Object timeout;
+
+        private final Object fallback;
+
+        private final boolean stream;
+
+        Options(final RequestDispatcherOptions requestDispatcherOptions, final Object timeout, final Object fallback, final boolean stream) {
+            this.requestDispatcherOptions = requestDispatcherOptions;
+            this.timeout = timeout;
+            this.fallback = fallback;
+            this.stream = stream;
+        }
+
+        boolean isGuarded() {
+            return !Objects.isNull(timeout) || !Objects.isNull(fallback);
+        }
+
+        boolean isStreamed() {
+            return stream && !isGuarded();
+        }
+
+    }
+
+}
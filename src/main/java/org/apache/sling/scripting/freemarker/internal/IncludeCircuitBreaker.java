@@ -0,0 +1,308 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import freemarker.template.TemplateModelException;
+import org.apache.sling.commons.metrics.Counter;
+import org.apache.sling.commons.metrics.Meter;
+import org.apache.sling.commons.metrics.MetricsService;
+import org.apache.sling.commons.metrics.Timer;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.Designate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Guards includes with a timeout and fallback content and a circuit breaker per include target.
+ *
+ * <p>An include cannot be interrupted as the request is not thread-safe, so an include exceeding its timeout is
+ * completed, but its content is discarded in favor of the fallback and it counts as failure. After repeated failures
+ * the target's circuit breaker opens and the target is not dispatched to for the cool-down period, which bounds the
+ * cost of a slow or broken target for subsequent renderings. After the cool-down the breaker is half-open: a single
+ * include is dispatched as trial, closing the breaker on success and opening it again on failure, while concurrent
+ * includes of the target render the fallback.
+ *
+ * <p>The number of tracked targets is bounded, targets without failures for a cool-down period are dropped when the
+ * bound is reached and failures of further targets are not tracked until then.
+ *
+ * <p>The time renderings are blocked in includes, guarded or not and including those rendered in process, is measured
+ * by the timer {@code sling.scripting.freemarker.include.dispatches}.
+ */
+@Component(
+    service = IncludeCircuitBreaker.class
+)
+@Designate(
+    ocd = IncludeCircuitBreakerConfiguration.class
+)
+public final class IncludeCircuitBreaker {
+
+    private static final String METRICS_PREFIX = "sling.scripting.freemarker.include.";
+
+    @Reference
+    private MetricsService metricsService;
+
+    private final Map<String, Breaker> breakers = new ConcurrentHashMap<>();
+
+    private volatile int failureThreshold;
+
+    private volatile long coolDown;
+
+    private volatile int maxTargets;
+
+    private Counter open;
+
+    private Meter tripped;
+
+    private Meter skipped;
+
+    private Meter timeouts;
+
+    private Meter failures;
+
+    private Timer dispatches;
+
+    private final Logger logger = LoggerFactory.getLogger(IncludeCircuitBreaker.class);
+
+    public IncludeCircuitBreaker() { //
+    }
+
+    @Activate
+    @SuppressWarnings("unused")
+    private void activate(final IncludeCircuitBreakerConfiguration configuration) {
+        logger.debug("activate");
+        open = metricsService.counter(METRICS_PREFIX.concat("breakers.open"));
+        tripped = metricsService.meter(METRICS_PREFIX.concat("breakers.tripped"));
+        skipped = metricsService.meter(METRICS_PREFIX.concat("skipped"));
+        timeouts = metricsService.meter(METRICS_PREFIX.concat("timeouts"));
+        failures = metricsService.meter(METRICS_PREFIX.concat("failures"));
+        dispatches = metricsService.timer(METRICS_PREFIX.concat("dispatches"));
+        configure(configuration);
+    }
+
+    @Modified
+    @SuppressWarnings("unused")
+    private void modified(final IncludeCircuitBreakerConfiguration configuration) {
+        logger.debug("modified");
+        configure(configuration);
+    }
+
+    private void configure(final IncludeCircuitBreakerConfiguration configuration) {
+        failureThreshold = Math.max(1, configuration.failureThreshold());
+        coolDown = TimeUnit.SECONDS.toNanos(configuration.coolDown());
+        maxTargets = Math.max(1, configuration.maxTargets());
+    }
+
+    /**
+     * Guards an include if a timeout or fallback is given.
+     *
+     * @param target   the include target, e.g. the path of the included resource
+     * @param include  the include returning the content or {@code null} if it failed
+     * @param timeout  the timeout in milliseconds or {@code null}
+     * @param fallback the fallback content or {@code null}
+     * @return the guarded include or the timed include if neither timeout nor fallback is given
+     * @throws TemplateModelException if the timeout is not a number
+     */
+    @SuppressWarnings("checkstyle:AvoidInlineConditionals")
+    Supplier<String> guard(final String target, final Supplier<String> include, final Object timeout, final Object fallback) throws TemplateModelException {
+        if (Objects.isNull(timeout) && Objects.isNull(fallback)) {
+            return () -> timed(target, include);
+        }
+        if (!Objects.isNull(timeout) && !(timeout instanceof Number)) {
+            throw new TemplateModelException("timeout must be a number of milliseconds");
+        }
+        final long millis = Objects.isNull(timeout) ? 0 : ((Number) timeout).longValue();
+        final String content = Objects.isNull(fallback) ? "" : fallback.toString();
+        return () -> include(target, include, millis, content);
+    }
+
+    /**
+     * Includes a target unless its circuit breaker is open or half-open with a trial in progress.
+     *
+     * @param target   the include target, e.g. the path of the included resource
+     * @param include  the include returning the content or {@code null} if it failed
+     * @param timeout  the time in milliseconds after which the content of the include is discarded, {@code 0} for none
+     * @param fallback the content to use when the include is skipped, fails or times out
+     * @return the content of the include or the fallback
+     */
+    @SuppressWarnings("checkstyle:AvoidInlineConditionals")
+    String include(final String target, final Supplier<String> include, final long timeout, final String fallback) {
+        final Breaker breaker = breakers.get(target);
+        if (!Objects.isNull(breaker) && !breaker.allows(System.nanoTime())) {
+            skipped.mark();
+            return fallback;
+        }
+        final long start = System.nanoTime();
+        final String content = content(target, include);
+        final long time = System.nanoTime() - start;
+        dispatches.update(time, TimeUnit.NANOSECONDS);
+        return complete(target, content, time, timeout) ? content : fallback;
+    }
+
+    /**
+     * Records the time a rendering was blocked in an include rendered in process.
+     *
+     * @param time the time in nanoseconds
+     */
+    void rendered(final long time) {
+        dispatches.update(time, TimeUnit.NANOSECONDS);
+    }
+
+    private String timed(final String target, final Supplier<String> include) {
+        final Timer.Context context = dispatches.time();
+        try {
+            return content(target, include);
+        } finally {
+            context.stop();
+        }
+    }
+
+    @SuppressWarnings("checkstyle:IllegalCatch")
+    private String content(final String target, final Supplier<String> include) {
+        try {
+            return include.get();
+        } catch (RuntimeException e) {
+            logger.error("including {} failed", target, e);
+            return null;
+        }
+    }
+
+    private boolean complete(final String target, final String content, final long time, final long timeout) {
+        final boolean failed = Objects.isNull(content);
+        final boolean timedOut = !failed && timeout > 0 && time > TimeUnit.MILLISECONDS.toNanos(timeout);
+        if (failed) {
+            failures.mark();
+        } else if (timedOut) {
+            logger.debug("including {} took {} ms, exceeding its timeout of {} ms", target, TimeUnit.NANOSECONDS.toMillis(time), timeout);
+            timeouts.mark();
+        }
+        if (failed || timedOut) {
+            failure(target);
+        } else {
+            success(target);
+        }
+        return !failed && !timedOut;
+    }
+
+    private void failure(final String target) {
+        final long now = System.nanoTime();
+        final Breaker breaker = breaker(target, now);
+        if (Objects.isNull(breaker)) {
+            logger.debug("not tracking failure of include {}, tracking {} targets already", target, maxTargets);
+            return;
+        }
+        final int state = breaker.fail(failureThreshold, now, coolDown);
+        if (state != Breaker.CLOSED) {
+            tripped.mark();
+            if (state == Breaker.OPENED) {
+                open.increment();
+            }
+            logger.warn("include {} failed or timed out repeatedly, skipping it for {} s", target, TimeUnit.NANOSECONDS.toSeconds(coolDown));
+        }
+    }
+
+    // the breaker of a target, null if it is not tracked yet and the bound is reached even after dropping expired ones
+    private Breaker breaker(final String target, final long now) {
+        if (!breakers.containsKey(target) && breakers.size() >= maxTargets) {
+            expire(now);
+        }
+        if (!breakers.containsKey(target) && breakers.size() >= maxTargets) {
+            return null;
+        }
+        return breakers.computeIfAbsent(target, t -> new Breaker());
+    }
+
+    private void expire(final long now) {
+        for (final Map.Entry<String, Breaker> entry : breakers.entrySet()) {
+            final Breaker breaker = entry.getValue();
+            if (breaker.isExpired(now) && breakers.remove(entry.getKey(), breaker) && breaker.isTripped()) {
+                open.decrement();
+            }
+        }
+    }
+
+    private void success(final String target) {
+        final Breaker breaker = breakers.remove(target);
+        if (!Objects.isNull(breaker) && breaker.isTripped()) {
+            open.decrement();
+        }
+    }
+
+    private static final class Breaker {
+
+        static final int CLOSED = 0;
+
+        static final int OPENED = 1;
+
+        static final int REOPENED = 2;
+
+        private final AtomicBoolean trial = new AtomicBoolean();
+
+        private int failures;
+
+        private volatile boolean tripped;
+
+        private volatile long openUntil;
+
+        private long expiresAt;
+
+        Breaker() { //
+        }
+
+        // closed, or half-open and the caller won the single trial
+        boolean allows(final long now) {
+            return !tripped || now - openUntil >= 0 && trial.compareAndSet(false, true);
+        }
+
+        boolean isTripped() {
+            return tripped;
+        }
+
+        synchronized boolean isExpired(final long now) {
+            return !trial.get() && now - expiresAt >= 0;
+        }
+
+        // opens the breaker when reaching the threshold, also ending a trial
+        @SuppressWarnings("checkstyle:AvoidInlineConditionals")
+        synchronized int fail(final int threshold, final long now, final long coolDown) {
+            failures++;
+            expiresAt = now + coolDown;
+            if (failures < threshold) {
+                return CLOSED;
+            }
+            final int state = tripped ? REOPENED : OPENED;
+            openUntil = now + coolDown;
+            expiresAt = openUntil + coolDown;
+            tripped = true;
+            trial.set(false);
+            return state;
+        }
+
+    }
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+@ObjectClassDefinition(
+    name = "Apache Sling Scripting FreeMarker Include Circuit Breaker",
+    description = "Skips includes with timeout or fallback for a cool-down period after repeated failures or timeouts"
+)
+@interface IncludeCircuitBreakerConfiguration {
+
+    @AttributeDefinition(
+        name = "failure threshold",
+        description = "number of consecutive failures or timeouts of an include target which opens its circuit breaker"
+    )
+    int failureThreshold() default 5;
+
+    @AttributeDefinition(
+        name = "cool-down",
+        description = "seconds an include target is skipped and its fallback is rendered after its circuit breaker opened"
+    )
+    int coolDown() default 30;
+
+    @AttributeDefinition(
+        name = "max targets",
+        description = "maximum number of include targets whose failures are tracked, targets without failures for a cool-down period are dropped when it is reached"
+    )
+    int maxTargets() default 1000;
+
+}
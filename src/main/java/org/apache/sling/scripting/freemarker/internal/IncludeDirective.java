@@ -22,8 +22,6 @@ import java.io.IOException;
 import java.util.Map;
 import java.util.Objects;
 
-import javax.servlet.RequestDispatcher;
-import javax.servlet.ServletException;
 
 import freemarker.core.Environment;
 import freemarker.template.TemplateDirectiveBody;
@@ -31,17 +29,12 @@ import freemarker.template.TemplateDirectiveModel;
 import freemarker.template.TemplateException;
 import freemarker.template.TemplateModel;
 import freemarker.template.TemplateModelException;
-import freemarker.template.utility.DeepUnwrap;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
 import org.apache.sling.api.request.RequestDispatcherOptions;
 import org.apache.sling.api.resource.Resource;
-import org.apache.sling.api.resource.ResourceUtil;
-import org.apache.sling.api.scripting.SlingBindings;
-import org.apache.sling.scripting.core.servlet.CaptureResponseWrapper;
 import org.osgi.service.component.annotations.Component;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.osgi.service.component.annotations.Reference;
 
 /**
  * Support for Sling Include in FreeMarker templates.<br>Includes a Resource rendering into the current template.
@@ -57,15 +50,19 @@ import org.slf4j.LoggerFactory;
 )
 public final class IncludeDirective implements TemplateDirectiveModel {
 
-    private static final String ADD_SELECTORS_PARAMETER_NAME = "addSelectors";
+    private static final String INCLUDE_PARAMETER_NAME = "include";
 
-    private static final String REPLACE_SELECTORS_PARAMETER_NAME = "replaceSelectors";
+    private static final String DEFERRED_PARAMETER_NAME = "deferred";
 
-    private static final String REPLACE_SUFFIX_PARAMETER_NAME = "replaceSuffix";
+    private static final String TIMEOUT_PARAMETER_NAME = "timeout";
 
-    private static final String RESOURCE_TYPE_PARAMETER_NAME = "resourceType";
+    private static final String FALLBACK_PARAMETER_NAME = "fallback";
 
-    private final Logger logger = LoggerFactory.getLogger(IncludeDirective.class);
+    @Reference
+    private IncludeCircuitBreaker includeCircuitBreaker;
+
+    @Reference
+    private InProcessInclude inProcessInclude;
 
     public IncludeDirective() { //
     }
@@ -74,89 +71,48 @@ public final class IncludeDirective implements TemplateDirectiveModel {
     @SuppressWarnings({"checkstyle:AvoidInlineConditionals", "checkstyle:NPathComplexity"})
     public void execute(final Environment environment, final Map parameters, final TemplateModel[] loopVars, final TemplateDirectiveBody body) throws TemplateException, IOException {
 
-        final SlingHttpServletRequest slingHttpServletRequest = (SlingHttpServletRequest) DeepUnwrap.unwrap(environment.getVariable(SlingBindings.REQUEST));
-        if (Objects.isNull(slingHttpServletRequest)) {
-            throw new TemplateException("request is null", environment);
-        }
-
-        final SlingHttpServletResponse slingHttpServletResponse = (SlingHttpServletResponse) DeepUnwrap.unwrap(environment.getVariable(SlingBindings.RESPONSE));
-        if (Objects.isNull(slingHttpServletResponse)) {
-            throw new TemplateException("response is null", environment);
-        }
+        final SlingHttpServletRequest slingHttpServletRequest = IncludeSupport.request(environment);
+        final SlingHttpServletResponse slingHttpServletResponse = IncludeSupport.response(environment);
 
-        final TemplateModel templateModel = (TemplateModel) parameters.get("include");
+        final TemplateModel templateModel = (TemplateModel) parameters.get(INCLUDE_PARAMETER_NAME);
         if (Objects.isNull(templateModel)) {
             throw new TemplateException("include is null", environment);
         }
-        final Object include = DeepUnwrap.unwrap(templateModel);
+        final Object include = IncludeSupport.unwrapParameter(INCLUDE_PARAMETER_NAME, parameters);
         if (Objects.isNull(include)) {
             throw new TemplateException("unwrapping include failed", environment);
         }
 
         final Resource resource = include instanceof Resource ? (Resource) include : null;
         final String path = include instanceof String ? (String) include : null;
-        final String content;
-        if (!Objects.isNull(resource)) {
-            content = dispatch(resource, requestDispatcherOptions(parameters), slingHttpServletRequest, slingHttpServletResponse);
-        } else if (!Objects.isNull(path)) {
-            content = dispatch(path, requestDispatcherOptions(parameters), slingHttpServletRequest, slingHttpServletResponse);
-        } else {
+        if (Objects.isNull(resource) && Objects.isNull(path)) {
             throw new TemplateException("resource and path are null", environment);
         }
 
-        if (!Objects.isNull(content)) {
-            environment.getOut().write(content);
-        } else {
-            throw new TemplateException("dispatching request failed, content is null", environment);
-        }
-    }
-
-    private String unwrapParameter(final String name, final Map<?, ?> parameters) throws TemplateModelException {
-        final TemplateModel parameter = (TemplateModel) parameters.get(name);
-        return (String) DeepUnwrap.unwrap(parameter);
-    }
-
-    private RequestDispatcherOptions requestDispatcherOptions(final Map<?, ?> parameters) throws TemplateModelException {
-        final String resourceType = unwrapParameter(RESOURCE_TYPE_PARAMETER_NAME, parameters);
-        final String replaceSelectors = unwrapParameter(REPLACE_SELECTORS_PARAMETER_NAME, parameters);
-        final String addSelectors = unwrapParameter(ADD_SELECTORS_PARAMETER_NAME, parameters);
-        final String replaceSuffix = unwrapParameter(REPLACE_SUFFIX_PARAMETER_NAME, parameters);
-
-        final RequestDispatcherOptions options = new RequestDispatcherOptions();
-        options.setForceResourceType(resourceType);
-        options.setReplaceSelectors(replaceSelectors);
-        options.setAddSelectors(addSelectors);
-        options.setReplaceSuffix(replaceSuffix);
-        return options;
-    }
-
-    private String dispatch(final RequestDispatcher requestDispatcher, final SlingHttpServletRequest slingHttpServletRequest, final SlingHttpServletResponse slingHttpServletResponse) {
-        try {
-            final CaptureResponseWrapper wrapper = new CaptureResponseWrapper(slingHttpServletResponse);
-            requestDispatcher.include(slingHttpServletRequest, wrapper);
-            if (!wrapper.isBinaryResponse()) {
-                return wrapper.getCapturedCharacterResponse();
-            }
-        } catch (ServletException | IOException e) {
-            logger.error("dispatching include failed", e);
+        final RequestDispatcherOptions requestDispatcherOptions = IncludeSupport.requestDispatcherOptions(parameters);
+        final String target = Objects.isNull(resource) ? IncludeSupport.absolutePath(path, slingHttpServletRequest) : resource.getPath();
+        final Object timeout = IncludeSupport.unwrapParameter(TIMEOUT_PARAMETER_NAME, parameters);
+        final Object fallback = IncludeSupport.unwrapParameter(FALLBACK_PARAMETER_NAME, parameters);
+        final DeferredIncludes deferredIncludes = deferredIncludes(parameters, slingHttpServletRequest);
+        if (!Objects.isNull(deferredIncludes)) {
+            environment.getOut().write(deferredIncludes.add(includeCircuitBreaker.guard(target, () -> IncludeSupport.include(resource, path, requestDispatcherOptions, slingHttpServletRequest, slingHttpServletResponse, null), timeout, fallback)));
+        } else if (!includeInProcess(include, timeout, fallback, requestDispatcherOptions, environment)) {
+            final String content = includeCircuitBreaker.guard(target, () -> IncludeSupport.include(resource, path, requestDispatcherOptions, slingHttpServletRequest, slingHttpServletResponse, null), timeout, fallback).get();
+            IncludeSupport.write(content, environment);
         }
-        return null;
     }
 
-    private String dispatch(final Resource resource, final RequestDispatcherOptions requestDispatcherOptions, final SlingHttpServletRequest slingHttpServletRequest, final SlingHttpServletResponse slingHttpServletResponse) {
-        final RequestDispatcher requestDispatcher = slingHttpServletRequest.getRequestDispatcher(resource, requestDispatcherOptions);
-        Objects.requireNonNull(requestDispatcher, String.format("getting RequestDispatcher for resource '%s' failed", resource));
-        return dispatch(requestDispatcher, slingHttpServletRequest, slingHttpServletResponse);
+    // includes guarded with timeout or fallback are always dispatched as their output may be discarded
+    private boolean includeInProcess(final Object include, final Object timeout, final Object fallback, final RequestDispatcherOptions requestDispatcherOptions, final Environment environment) throws TemplateException, IOException {
+        final boolean guarded = !Objects.isNull(timeout) || !Objects.isNull(fallback);
+        return !guarded && inProcessInclude.include(include, requestDispatcherOptions, IncludeSupport.request(environment), IncludeSupport.response(environment), environment);
     }
 
+    // includes can be deferred in top-level renderings only, otherwise deferred includes are rendered in place
     @SuppressWarnings("checkstyle:AvoidInlineConditionals")
-    private String dispatch(final String path, final RequestDispatcherOptions requestDispatcherOptions, final SlingHttpServletRequest slingHttpServletRequest, final SlingHttpServletResponse slingHttpServletResponse) {
-        // ensure the path is absolute and normalized
-        final String absolutePath = path.startsWith("/") ? path : String.format("%s/%s", slingHttpServletRequest.getResource().getPath(), path);
-        final String normalizedAbsolutePath = ResourceUtil.normalize(absolutePath);
-        final RequestDispatcher requestDispatcher = slingHttpServletRequest.getRequestDispatcher(normalizedAbsolutePath, requestDispatcherOptions);
-        Objects.requireNonNull(requestDispatcher, String.format("getting RequestDispatcher for path '%s' failed", normalizedAbsolutePath));
-        return dispatch(requestDispatcher, slingHttpServletRequest, slingHttpServletResponse);
+    private DeferredIncludes deferredIncludes(final Map<?, ?> parameters, final SlingHttpServletRequest slingHttpServletRequest) throws TemplateModelException {
+        final boolean deferred = Boolean.TRUE.equals(IncludeSupport.unwrapParameter(DEFERRED_PARAMETER_NAME, parameters));
+        return deferred ? DeferredIncludes.get(slingHttpServletRequest) : null;
     }
 
 }
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.util.Objects;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.request.RequestDispatcherOptions;
+import org.apache.sling.api.request.RequestPathInfo;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+
+/**
+ * Request path info of an include, derived from the including request's path info and the request dispatcher options
+ * like Sling's request dispatcher does.
+ */
+final class IncludeRequestPathInfo implements RequestPathInfo {
+
+    private static final String[] NO_SELECTORS = new String[0];
+
+    private final ResourceResolver resourceResolver;
+
+    private final String resourcePath;
+
+    private final String selectorString;
+
+    private final String extension;
+
+    private final String suffix;
+
+    private IncludeRequestPathInfo(final ResourceResolver resourceResolver, final String resourcePath, final String selectorString, final String extension, final String suffix) {
+        this.resourceResolver = resourceResolver;
+        this.resourcePath = resourcePath;
+        this.selectorString = StringUtils.trimToNull(selectorString);
+        this.extension = extension;
+        this.suffix = StringUtils.trimToNull(suffix);
+    }
+
+    /**
+     * Merges the path info of the including request and the request dispatcher options for an included resource.
+     *
+     * @param resource the included resource
+     * @param base     the request path info of the including request
+     * @param options  the request dispatcher options
+     * @return the request path info of the include
+     */
+    @SuppressWarnings("checkstyle:AvoidInlineConditionals")
+    static IncludeRequestPathInfo merge(final Resource resource, final RequestPathInfo base, final RequestDispatcherOptions options) {
+        String selectorString = base.getSelectorString();
+        if (!Objects.isNull(options.getReplaceSelectors())) {
+            selectorString = options.getReplaceSelectors();
+        }
+        if (StringUtils.isNotEmpty(options.getAddSelectors())) {
+            selectorString = StringUtils.isEmpty(selectorString) ? options.getAddSelectors() : String.format("%s.%s", selectorString, options.getAddSelectors());
+        }
+        String suffix = base.getSuffix();
+        if (!Objects.isNull(options.getReplaceSuffix())) {
+            suffix = options.getReplaceSuffix();
+        }
+        return new IncludeRequestPathInfo(resource.getResourceResolver(), resource.getPath(), selectorString, base.getExtension(), suffix);
+    }
+
+    @Override
+    public String getResourcePath() {
+        return resourcePath;
+    }
+
+    @Override
+    public String getExtension() {
+        return extension;
+    }
+
+    @Override
+    public String getSelectorString() {
+        return selectorString;
+    }
+
+    @Override
+    @SuppressWarnings("checkstyle:AvoidInlineConditionals")
+    public String[] getSelectors() {
+        return Objects.isNull(selectorString) ? NO_SELECTORS : selectorString.split("\\.");
+    }
+
+    @Override
+    public String getSuffix() {
+        return suffix;
+    }
+
+    @Override
+    @SuppressWarnings("checkstyle:AvoidInlineConditionals")
+    public Resource getSuffixResource() {
+        return StringUtils.startsWith(suffix, "/") ? resourceResolver.getResource(suffix) : null;
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.util.Objects;
+
+import javax.servlet.Servlet;
+
+import org.apache.sling.api.SlingConstants;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.request.RequestPathInfo;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceWrapper;
+import org.apache.sling.api.wrappers.SlingHttpServletRequestWrapper;
+
+/**
+ * Request wrapper for an include rendered in process, providing the included resource, its request path info and the
+ * request attributes Sling sets for includes.
+ */
+final class IncludeRequestWrapper extends SlingHttpServletRequestWrapper {
+
+    private final Resource resource;
+
+    private final RequestPathInfo requestPathInfo;
+
+    private final Servlet servlet;
+
+    /**
+     * Wraps the including request for an include.
+     *
+     * @param request         the including request
+     * @param resource        the included resource
+     * @param requestPathInfo the request path info of the include
+     * @param resourceType    the resource type to force or {@code null}
+     * @param servlet         the servlet rendering the include or {@code null} if not resolved yet
+     */
+    @SuppressWarnings("checkstyle:AvoidInlineConditionals")
+    IncludeRequestWrapper(final SlingHttpServletRequest request, final Resource resource, final RequestPathInfo requestPathInfo, final String resourceType, final Servlet servlet) {
+        super(request);
+        final boolean forceResourceType = !Objects.isNull(resourceType) && !resourceType.equals(resource.getResourceType());
+        this.resource = forceResourceType ? new TypeOverwritingResourceWrapper(resource, resourceType) : resource;
+        this.requestPathInfo = requestPathInfo;
+        this.servlet = servlet;
+    }
+
+    private IncludeRequestWrapper(final IncludeRequestWrapper request, final Servlet servlet) {
+        super(request.getSlingRequest());
+        this.resource = request.resource;
+        this.requestPathInfo = request.requestPathInfo;
+        this.servlet = servlet;
+    }
+
+    /**
+     * Wraps the including request for the same include rendered by a servlet.
+     *
+     * @param servlet the servlet rendering the include
+     * @return the request of the include
+     */
+    IncludeRequestWrapper withServlet(final Servlet servlet) {
+        return new IncludeRequestWrapper(this, servlet);
+    }
+
+    @Override
+    public Resource getResource() {
+        return resource;
+    }
+
+    @Override
+    public RequestPathInfo getRequestPathInfo() {
+        return requestPathInfo;
+    }
+
+    @Override
+    public Object getAttribute(final String name) {
+        final Object value;
+        if (SlingConstants.ATTR_REQUEST_CONTENT.equals(name)) {
+            value = resource;
+        } else if (SlingConstants.ATTR_REQUEST_PATH_INFO.equals(name)) {
+            value = requestPathInfo;
+        } else if (SlingConstants.ATTR_REQUEST_SERVLET.equals(name) && !Objects.isNull(servlet)) {
+            value = servlet;
+        } else {
+            value = super.getAttribute(name);
+        }
+        return value;
+    }
+
+    // the super type of the wrapped resource belongs to its own resource type
+    private static final class TypeOverwritingResourceWrapper extends ResourceWrapper {
+
+        private final String resourceType;
+
+        TypeOverwritingResourceWrapper(final Resource resource, final String resourceType) {
+            super(resource);
+            this.resourceType = resourceType;
+        }
+
+        @Override
+        public String getResourceType() {
+            return resourceType;
+        }
+
+        @Override
+        public String getResourceSuperType() {
+            return null;
+        }
+
+    }
+
+}
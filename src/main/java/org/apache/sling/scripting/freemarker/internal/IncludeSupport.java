@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletException;
+
+import freemarker.core.Environment;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.utility.DeepUnwrap;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.SlingException;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.request.RequestDispatcherOptions;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.api.scripting.SlingBindings;
+import org.apache.sling.api.scripting.SlingScript;
+import org.apache.sling.scripting.core.servlet.CaptureResponseWrapper;
+
+/**
+ * Support for the include directives.
+ */
+final class IncludeSupport {
+
+    private static final String ADD_SELECTORS_PARAMETER_NAME = "addSelectors";
+
+    private static final String REPLACE_SELECTORS_PARAMETER_NAME = "replaceSelectors";
+
+    private static final String REPLACE_SUFFIX_PARAMETER_NAME = "replaceSuffix";
+
+    private static final String RESOURCE_TYPE_PARAMETER_NAME = "resourceType";
+
+    private IncludeSupport() { //
+    }
+
+    static SlingHttpServletRequest request(final Environment environment) throws TemplateException {
+        final SlingHttpServletRequest slingHttpServletRequest = (SlingHttpServletRequest) DeepUnwrap.unwrap(environment.getVariable(SlingBindings.REQUEST));
+        if (Objects.isNull(slingHttpServletRequest)) {
+            throw new TemplateException("request is null", environment);
+        }
+        return slingHttpServletRequest;
+    }
+
+    static SlingHttpServletResponse response(final Environment environment) throws TemplateException {
+        final SlingHttpServletResponse slingHttpServletResponse = (SlingHttpServletResponse) DeepUnwrap.unwrap(environment.getVariable(SlingBindings.RESPONSE));
+        if (Objects.isNull(slingHttpServletResponse)) {
+            throw new TemplateException("response is null", environment);
+        }
+        return slingHttpServletResponse;
+    }
+
+    static Object unwrapParameter(final String name, final Map<?, ?> parameters) throws TemplateModelException {
+        final TemplateModel parameter = (TemplateModel) parameters.get(name);
+        return DeepUnwrap.unwrap(parameter);
+    }
+
+    // ensure the path is absolute and normalized
+    @SuppressWarnings("checkstyle:AvoidInlineConditionals")
+    static String absolutePath(final String path, final SlingHttpServletRequest slingHttpServletRequest) {
+        final String absolutePath = path.startsWith("/") ? path : String.format("%s/%s", slingHttpServletRequest.getResource().getPath(), path);
+        return ResourceUtil.normalize(absolutePath);
+    }
+
+    // resolves an included resource or path, resources resolved with selectors, extension or suffix and non-existing resources are ignored
+    static Resource resolve(final Object include, final SlingHttpServletRequest slingHttpServletRequest) {
+        Resource resource = null;
+        if (include instanceof Resource) {
+            resource = (Resource) include;
+        } else if (include instanceof String) {
+            resource = slingHttpServletRequest.getResourceResolver().resolve(slingHttpServletRequest, absolutePath((String) include, slingHttpServletRequest));
+        }
+        if (!Objects.isNull(resource) && (ResourceUtil.isNonExistingResource(resource) || StringUtils.isNotEmpty(resource.getResourceMetadata().getResolutionPathInfo()))) {
+            resource = null;
+        }
+        return resource;
+    }
+
+    static RequestDispatcherOptions requestDispatcherOptions(final Map<?, ?> parameters) throws TemplateModelException {
+        final String resourceType = (String) unwrapParameter(RESOURCE_TYPE_PARAMETER_NAME, parameters);
+        final String replaceSelectors = (String) unwrapParameter(REPLACE_SELECTORS_PARAMETER_NAME, parameters);
+        final String addSelectors = (String) unwrapParameter(ADD_SELECTORS_PARAMETER_NAME, parameters);
+        final String replaceSuffix = (String) unwrapParameter(REPLACE_SUFFIX_PARAMETER_NAME, parameters);
+
+        final RequestDispatcherOptions options = new RequestDispatcherOptions();
+        options.setForceResourceType(resourceType);
+        options.setReplaceSelectors(replaceSelectors);
+        options.setAddSelectors(addSelectors);
+        options.setReplaceSuffix(replaceSuffix);
+        return options;
+    }
+
+    static RequestDispatcher requestDispatcher(final Resource resource, final RequestDispatcherOptions requestDispatcherOptions, final SlingHttpServletRequest slingHttpServletRequest) {
+        final RequestDispatcher requestDispatcher = slingHttpServletRequest.getRequestDispatcher(resource, requestDispatcherOptions);
+        Objects.requireNonNull(requestDispatcher, String.format("getting RequestDispatcher for resource '%s' failed", resource));
+        return requestDispatcher;
+    }
+
+    static RequestDispatcher requestDispatcher(final String path, final RequestDispatcherOptions requestDispatcherOptions, final SlingHttpServletRequest slingHttpServletRequest) {
+        final String normalizedAbsolutePath = absolutePath(path, slingHttpServletRequest);
+        final RequestDispatcher requestDispatcher = slingHttpServletRequest.getRequestDispatcher(normalizedAbsolutePath, requestDispatcherOptions);
+        Objects.requireNonNull(requestDispatcher, String.format("getting RequestDispatcher for path '%s' failed", normalizedAbsolutePath));
+        return requestDispatcher;
+    }
+
+    /**
+     * Dispatches an include of a resource or path, traced in the request progress tracker.
+     *
+     * @param resource the included resource or {@code null}
+     * @param path     the included path if the resource is {@code null}
+     * @param options  the request dispatcher options
+     * @param request  the including request
+     * @param response the including response
+     * @param writer   the writer to stream the output to or {@code null} to capture it
+     * @return the captured output, the empty string if streamed or {@code null} for binary output
+     * @throws SlingException if dispatching or writing the output failed
+     */
+    @SuppressWarnings("checkstyle:AvoidInlineConditionals")
+    static String include(final Resource resource, final String path, final RequestDispatcherOptions options, final SlingHttpServletRequest request, final SlingHttpServletResponse response, final Writer writer) {
+        final RenderTrace trace = RenderTrace.start(request, String.format("include %s", Objects.isNull(resource) ? path : resource.getPath()));
+        String content = null;
+        int length = -1;
+        try {
+            final RequestDispatcher requestDispatcher = Objects.isNull(resource) ? requestDispatcher(path, options, request) : requestDispatcher(resource, options, request);
+            content = Objects.isNull(writer) ? capture(requestDispatcher, request, response) : stream(requestDispatcher, request, response, writer);
+            length = Objects.isNull(content) ? -1 : content.length();
+        } catch (ServletException | IOException e) {
+            throw new SlingException("dispatching include failed", e);
+        } finally {
+            trace.end(", addSelectors {0}, replaceSelectors {1}, resourceType {2}, output {3} chars",
+                options.getAddSelectors(),
+                options.getReplaceSelectors(),
+                options.getForceResourceType(),
+                length
+            );
+        }
+        return content;
+    }
+
+    // writes content of an include to the output of the including template
+    static void write(final String content, final Environment environment) throws TemplateException, IOException {
+        if (Objects.isNull(content)) {
+            throw new TemplateException("dispatching request failed, content is null", environment);
+        }
+        environment.getOut().write(content);
+    }
+
+    // returns the captured character output or null for binary output
+    static String capture(final RequestDispatcher requestDispatcher, final SlingHttpServletRequest slingHttpServletRequest, final SlingHttpServletResponse slingHttpServletResponse) throws ServletException, IOException {
+        final CaptureResponseWrapper wrapper = new CaptureResponseWrapper(slingHttpServletResponse);
+        requestDispatcher.include(slingHttpServletRequest, wrapper);
+        if (wrapper.isBinaryResponse()) {
+            return null;
+        }
+        return wrapper.getCapturedCharacterResponse();
+    }
+
+    // writes the character output to the writer and returns the empty string
+    static String stream(final RequestDispatcher requestDispatcher, final SlingHttpServletRequest slingHttpServletRequest, final SlingHttpServletResponse slingHttpServletResponse, final Writer writer) throws ServletException, IOException {
+        final WriterResponseWrapper wrapper = new WriterResponseWrapper(slingHttpServletResponse, writer);
+        requestDispatcher.include(slingHttpServletRequest, wrapper);
+        flush(wrapper);
+        return "";
+    }
+
+    // evaluates a script writing to the output of the including template
+    static void eval(final SlingScript script, final SlingHttpServletRequest slingHttpServletRequest, final SlingHttpServletResponse slingHttpServletResponse, final Environment environment) throws TemplateException, IOException {
+        final WriterResponseWrapper wrapper = new WriterResponseWrapper(slingHttpServletResponse, environment.getOut());
+        final SlingBindings bindings = new SlingBindings();
+        bindings.setRequest(slingHttpServletRequest);
+        bindings.setResponse(wrapper);
+        bindings.setOut(wrapper.getWriter());
+        try {
+            script.eval(bindings);
+        } catch (SlingException e) {
+            throw new TemplateException(String.format("rendering include %s failed", slingHttpServletRequest.getResource().getPath()), e, environment);
+        }
+        flush(wrapper);
+    }
+
+    private static void flush(final WriterResponseWrapper wrapper) throws IOException {
+        wrapper.getWriter().flush();
+        if (wrapper.checkError()) {
+            throw new IOException("writing included output failed");
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import freemarker.template.SimpleSequence;
+import freemarker.template.TemplateCollectionModel;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateModelIterator;
+
+/**
+ * Lazy model of a JSON array, iterating its elements forward-only from the {@link JsonCursor}.
+ *
+ * <p>Elements are read completely one at a time, as listing looks ahead for the next element while the current one is
+ * being processed, and are not kept. So memory is bounded by the largest element and not by the size of the array.
+ * Iterating again continues where the previous iteration stopped.
+ */
+final class JsonCollectionModel implements TemplateCollectionModel {
+
+    private final JsonCursor cursor;
+
+    private final int id;
+
+    JsonCollectionModel(final JsonCursor cursor, final int id) {
+        this.cursor = cursor;
+        this.id = id;
+    }
+
+    @Override
+    public TemplateModelIterator iterator() {
+        return new Iterator();
+    }
+
+    @SuppressWarnings("checkstyle:AvoidInlineConditionals")
+    private TemplateModel read() throws IOException {
+        if (cursor.isScalarNext()) {
+            return cursor.readValue();
+        }
+        return cursor.isObjectNext() ? readObject(cursor.begin()) : readArray(cursor.begin());
+    }
+
+    private TemplateModel readObject(final int container) throws IOException {
+        final Map<String, TemplateModel> members = new HashMap<>();
+        String name = cursor.nextName(container);
+        while (name != null) {
+            members.put(name, read());
+            name = cursor.nextName(container);
+        }
+        return new JsonHashModel(members);
+    }
+
+    private TemplateModel readArray(final int container) throws IOException {
+        final List<TemplateModel> elements = new ArrayList<>();
+        while (cursor.nextElement(container)) {
+            elements.add(read());
+        }
+        return new SimpleSequence(elements, null);
+    }
+
+    private final class Iterator implements TemplateModelIterator {
+
+        private Boolean hasNext;
+
+        Iterator() {
+            hasNext = null;
+        }
+
+        @Override
+        public TemplateModel next() throws TemplateModelException {
+            if (!hasNext()) {
+                throw new NoSuchElementException("no more JSON array elements");
+            }
+            hasNext = null;
+            try {
+                return read();
+            } catch (IOException e) {
+                throw new TemplateModelException("reading JSON array element failed", e);
+            }
+        }
+
+        @Override
+        public boolean hasNext() throws TemplateModelException {
+            if (hasNext == null) {
+                try {
+                    hasNext = cursor.nextElement(id);
+                } catch (IOException e) {
+                    throw new TemplateModelException("reading JSON array failed", e);
+                }
+            }
+            return hasNext;
+        }
+
+    }
+
+}
@@ -0,0 +1,278 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+
+import freemarker.template.SimpleNumber;
+import freemarker.template.SimpleScalar;
+import freemarker.template.TemplateBooleanModel;
+import freemarker.template.TemplateModel;
+
+/**
+ * Forward-only cursor over a JSON document read by a streaming {@link JsonParser}, shared by the lazy models of its
+ * objects and arrays.
+ *
+ * <p>Containers are identified by the order in which they were opened. Reading a container's next member or element
+ * skips what is left of containers nested in it, which cannot be read afterwards.
+ */
+final class JsonCursor implements Closeable {
+
+    private final JsonParser parser;
+
+    private final Deque<Frame> frames = new ArrayDeque<>();
+
+    private Event peeked;
+
+    private int containers;
+
+    JsonCursor(final Reader reader) {
+        this.parser = Json.createParser(reader);
+    }
+
+    /**
+     * Reads the next value.
+     *
+     * @return a scalar model, a lazy model for an object or an array, or {@code null} for JSON null
+     * @throws IOException if reading fails or the document is malformed
+     */
+    TemplateModel readValue() throws IOException {
+        final Event event = next();
+        final TemplateModel value;
+        if (event == Event.START_OBJECT) {
+            value = new JsonHashModel(this, open());
+        } else if (event == Event.START_ARRAY) {
+            value = new JsonCollectionModel(this, open());
+        } else {
+            value = scalar(event);
+        }
+        if (frames.isEmpty()) {
+            close();
+        }
+        return value;
+    }
+
+    /**
+     * Checks whether the next value is a scalar.
+     *
+     * @return {@code true} if the next value is neither an object nor an array
+     * @throws IOException if reading fails
+     */
+    boolean isScalarNext() throws IOException {
+        final Event event = peek();
+        return event != Event.START_OBJECT && event != Event.START_ARRAY;
+    }
+
+    /**
+     * Checks whether the next value is an object.
+     *
+     * @return {@code true} if the next value is an object
+     * @throws IOException if reading fails
+     */
+    boolean isObjectNext() throws IOException {
+        return peek() == Event.START_OBJECT;
+    }
+
+    /**
+     * Reads the beginning of the next value, which must be an object or an array.
+     *
+     * @return the id of the object or array
+     * @throws IOException if reading fails
+     */
+    int begin() throws IOException {
+        next();
+        return open();
+    }
+
+    /**
+     * Skips the next value.
+     *
+     * @throws IOException if reading fails or the document is malformed
+     */
+    void skipValue() throws IOException {
+        final Event event = next();
+        if (event == Event.START_OBJECT || event == Event.START_ARRAY) {
+            skipRest();
+        }
+    }
+
+    /**
+     * Reads the name of an object's next member, positioned before its value.
+     *
+     * @param id the object's id
+     * @return the name or {@code null} if the object has no more members
+     * @throws IOException if the object has already been passed, reading fails or the document is malformed
+     */
+    String nextName(final int id) throws IOException {
+        final Frame frame = enter(id);
+        final Event event = next();
+        if (event == Event.END_OBJECT) {
+            leave();
+            return null;
+        }
+        if (event != Event.KEY_NAME) {
+            throw new IOException(String.format("malformed JSON, expected member name instead of %s", event));
+        }
+        frame.first = false;
+        return parser.getString();
+    }
+
+    /**
+     * Checks whether an array has a next element and positions the cursor before it.
+     *
+     * @param id the array's id
+     * @return {@code true} if there is a next element
+     * @throws IOException if the array has already been passed, reading fails or the document is malformed
+     */
+    boolean nextElement(final int id) throws IOException {
+        final Frame frame = enter(id);
+        if (peek() == Event.END_ARRAY) {
+            next();
+            leave();
+            return false;
+        }
+        frame.first = false;
+        return true;
+    }
+
+    /**
+     * Checks whether a container which has not been read yet is empty.
+     *
+     * @param id the container's id
+     * @return {@code true} if the container is empty
+     * @throws IOException if the container has already been passed or reading fails
+     */
+    boolean isEmpty(final int id) throws IOException {
+        final Frame frame = enter(id);
+        final Event event = peek();
+        return frame.first && (event == Event.END_OBJECT || event == Event.END_ARRAY);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            parser.close();
+        } catch (JsonException e) {
+            throw new IOException("closing JSON parser failed", e);
+        }
+    }
+
+    private int open() {
+        containers++;
+        frames.push(new Frame(containers));
+        return containers;
+    }
+
+    private void leave() throws IOException {
+        frames.pop();
+        if (frames.isEmpty()) {
+            close();
+        }
+    }
+
+    // positions the cursor in the container, skipping what is left of containers nested in it
+    private Frame enter(final int id) throws IOException {
+        if (frames.stream().noneMatch(frame -> frame.id == id)) {
+            throw new IOException("JSON container has already been passed, access is forward-only");
+        }
+        while (frames.element().id != id) {
+            skipRest();
+            frames.pop();
+        }
+        return frames.element();
+    }
+
+    // skips to the end of the current container
+    private void skipRest() throws IOException {
+        int depth = 1;
+        while (depth > 0) {
+            final Event event = next();
+            if (event == Event.START_OBJECT || event == Event.START_ARRAY) {
+                depth++;
+            } else if (event == Event.END_OBJECT || event == Event.END_ARRAY) {
+                depth--;
+            }
+        }
+    }
+
+    private TemplateModel scalar(final Event event) throws IOException {
+        final TemplateModel value;
+        if (event == Event.VALUE_STRING) {
+            value = new SimpleScalar(parser.getString());
+        } else if (event == Event.VALUE_NUMBER) {
+            value = new SimpleNumber(parser.getBigDecimal());
+        } else if (event == Event.VALUE_TRUE) {
+            value = TemplateBooleanModel.TRUE;
+        } else if (event == Event.VALUE_FALSE) {
+            value = TemplateBooleanModel.FALSE;
+        } else if (event == Event.VALUE_NULL) {
+            value = null;
+        } else {
+            throw new IOException(String.format("malformed JSON, expected value instead of %s", event));
+        }
+        return value;
+    }
+
+    // the next event is peeked at without losing the parser's data of it, as reading it does not advance the parser
+    private Event peek() throws IOException {
+        if (peeked == null) {
+            peeked = advance();
+        }
+        return peeked;
+    }
+
+    private Event next() throws IOException {
+        final Event event = peek();
+        peeked = null;
+        return event;
+    }
+
+    private Event advance() throws IOException {
+        try {
+            if (!parser.hasNext()) {
+                throw new IOException("unexpected end of JSON");
+            }
+            return parser.next();
+        } catch (JsonException e) {
+            throw new IOException("malformed JSON", e);
+        }
+    }
+
+    private static final class Frame {
+
+        private final int id;
+
+        private boolean first = true;
+
+        Frame(final int id) {
+            this.id = id;
+        }
+
+    }
+
+}
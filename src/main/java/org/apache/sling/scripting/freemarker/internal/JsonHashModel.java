@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import freemarker.template.TemplateHashModel;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+
+/**
+ * Lazy model of a JSON object, reading members from the {@link JsonCursor} only until the requested one is found.
+ *
+ * <p>Scalar members read on the way are kept, objects and arrays read on the way are skipped and cannot be accessed
+ * afterwards. Objects in arrays are read completely instead, see {@link JsonCollectionModel}.
+ */
+final class JsonHashModel implements TemplateHashModel {
+
+    private final JsonCursor cursor;
+
+    private final int id;
+
+    private final Map<String, TemplateModel> members;
+
+    private final Set<String> skipped = new HashSet<>();
+
+    private boolean done;
+
+    JsonHashModel(final JsonCursor cursor, final int id) {
+        this.cursor = cursor;
+        this.id = id;
+        this.members = new HashMap<>();
+    }
+
+    JsonHashModel(final Map<String, TemplateModel> members) {
+        this.cursor = null;
+        this.id = 0;
+        this.members = members;
+        this.done = true;
+    }
+
+    @Override
+    public TemplateModel get(final String key) throws TemplateModelException {
+        if (members.containsKey(key)) {
+            return members.get(key);
+        }
+        try {
+            final TemplateModel value = read(key);
+            if (value == null && skipped.contains(key)) {
+                throw new TemplateModelException(String.format("JSON member %s has already been passed, access objects and arrays in document order", key));
+            }
+            return value;
+        } catch (IOException e) {
+            throw new TemplateModelException(String.format("reading JSON member %s failed", key), e);
+        }
+    }
+
+    private TemplateModel read(final String key) throws IOException {
+        while (!done) {
+            final String name = cursor.nextName(id);
+            if (name == null) {
+                done = true;
+            } else if (name.equals(key) || cursor.isScalarNext()) {
+                members.put(name, cursor.readValue());
+                if (name.equals(key)) {
+                    break;
+                }
+            } else {
+                cursor.skipValue();
+                skipped.add(name);
+            }
+        }
+        return members.get(key);
+    }
+
+    @Override
+    public boolean isEmpty() throws TemplateModelException {
+        try {
+            return members.isEmpty() && skipped.isEmpty() && (done || cursor.isEmpty(id));
+        } catch (IOException e) {
+            throw new TemplateModelException("reading JSON object failed", e);
+        }
+    }
+
+}
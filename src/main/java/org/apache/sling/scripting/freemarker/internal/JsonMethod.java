@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import freemarker.core.Environment;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateMethodModelEx;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.utility.DeepUnwrap;
+import org.apache.sling.api.resource.Resource;
+import org.osgi.service.component.annotations.Component;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streaming access to JSON resources in FreeMarker templates.
+ *
+ * <p>The JSON is read lazily and forward-only by a streaming JSON parser while the template accesses it, objects become
+ * hashes and arrays become collections which can be listed once. Sources not read to the end are closed when
+ * processing the template ends.
+ *
+ * <p>Accessing a member of an object reads the object up to that member. Scalar members read on the way stay
+ * accessible, but objects and arrays read on the way are skipped: accessing them afterwards fails. Templates have to
+ * access the objects and arrays of an object in document order, e.g. for {@code {"meta": {...}, "items": [...]}}
+ * {@code document.meta} has to be accessed (or assigned) before {@code document.items}.
+ */
+@Component(
+    service = {
+        TemplateModel.class
+    },
+    property = {
+        "namespace=sling",
+        "name=json"
+    }
+)
+public final class JsonMethod implements TemplateMethodModelEx {
+
+    private static final String CURSORS_ATTRIBUTE_NAME = JsonMethod.class.getName();
+
+    public JsonMethod() { //
+    }
+
+    @Override
+    public Object exec(final List arguments) throws TemplateModelException {
+        if (arguments.size() != 1) {
+            throw new TemplateModelException("wrong number of arguments, expecting 1 (resource or path).");
+        }
+        final Environment environment = Environment.getCurrentEnvironment();
+        final Resource resource = resource(DeepUnwrap.unwrap((TemplateModel) arguments.get(0)), environment);
+        final InputStream inputStream = resource.adaptTo(InputStream.class);
+        if (Objects.isNull(inputStream)) {
+            throw new TemplateModelException(String.format("resource %s cannot be read as JSON", resource.getPath()));
+        }
+        final JsonCursor cursor = new JsonCursor(new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8)));
+        cursors(environment).add(cursor);
+        try {
+            return cursor.readValue();
+        } catch (IOException e) {
+            throw new TemplateModelException(String.format("reading JSON from %s failed", resource.getPath()), e);
+        }
+    }
+
+    private static Resource resource(final Object source, final Environment environment) throws TemplateModelException {
+        if (source instanceof Resource) {
+            return (Resource) source;
+        }
+        if (!(source instanceof String)) {
+            throw new TemplateModelException(String.format("cannot read JSON from %s, expecting a resource or a path", source));
+        }
+        try {
+            final Resource base = IncludeSupport.request(environment).getResource();
+            final Resource resource = base.getResourceResolver().getResource(base, (String) source);
+            if (Objects.isNull(resource)) {
+                throw new TemplateModelException(String.format("resource %s not found", source));
+            }
+            return resource;
+        } catch (TemplateException e) {
+            throw new TemplateModelException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Closeable> cursors(final Environment environment) {
+        List<Closeable> cursors = (List<Closeable>) environment.getCustomAttribute(CURSORS_ATTRIBUTE_NAME);
+        if (Objects.isNull(cursors)) {
+            cursors = new ArrayList<>();
+            environment.setCustomAttribute(CURSORS_ATTRIBUTE_NAME, cursors);
+        }
+        return cursors;
+    }
+
+    /**
+     * Closes the JSON sources opened while processing a template.
+     *
+     * @param environment the processing environment
+     */
+    static void close(final Environment environment) {
+        final Object cursors = environment.getCustomAttribute(CURSORS_ATTRIBUTE_NAME);
+        if (cursors instanceof List) {
+            for (final Object cursor : (List<?>) cursors) {
+                try {
+                    ((Closeable) cursor).close();
+                } catch (IOException e) {
+                    LoggerFactory.getLogger(JsonMethod.class).warn("closing JSON source failed", e);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import freemarker.core.Environment;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateMethodModelEx;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.utility.DeepUnwrap;
+import org.apache.sling.api.SlingConstants;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.resource.Resource;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventConstants;
+import org.osgi.service.event.EventHandler;
+
+/**
+ * Maps paths to links in FreeMarker templates with the request's resource resolver.
+ *
+ * <p>Mapped paths are cached across requests per user of the resource resolver and per scheme, host, port and context
+ * path of the request, the cache is cleared when the resource resolver mapping changes. The cache is split into
+ * segments by key, each evicting its least recently used mappings, so renderings mapping paths concurrently rarely
+ * wait for each other.
+ *
+ * <p>The host is taken from the request and therefore from the client, so only mappings for a bounded number of hosts
+ * are cached until the mapping changes. Paths for further hosts are mapped without caching.
+ */
+@Component(
+    service = {
+        TemplateModel.class,
+        EventHandler.class
+    },
+    property = {
+        "namespace=sling",
+        "name=map",
+        EventConstants.EVENT_TOPIC + "=" + SlingConstants.TOPIC_RESOURCE_RESOLVER_MAPPING_CHANGED
+    }
+)
+public final class MapMethod implements TemplateMethodModelEx, EventHandler {
+
+    private static final int SEGMENTS = 16;
+
+    private static final int MAX_ENTRIES_PER_SEGMENT = 625;
+
+    private static final int MAX_HOSTS = 64;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    private final Set<String> hosts = new HashSet<>();
+
+    private final AtomicLong generation = new AtomicLong();
+
+    public MapMethod() {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    @Override
+    public Object exec(final List arguments) throws TemplateModelException {
+        if (arguments.size() != 1) {
+            throw new TemplateModelException("wrong number of arguments, expecting 1 (resource or path).");
+        }
+        final Object source = DeepUnwrap.unwrap((TemplateModel) arguments.get(0));
+        final String path;
+        if (source instanceof Resource) {
+            path = ((Resource) source).getPath();
+        } else if (source instanceof String) {
+            path = (String) source;
+        } else {
+            throw new TemplateModelException(String.format("cannot map %s, expecting a resource or a path", source));
+        }
+        final SlingHttpServletRequest request = request(Environment.getCurrentEnvironment());
+        final String host = String.format("%s://%s:%s%s", request.getScheme(), request.getServerName(), request.getServerPort(), request.getContextPath());
+        if (!isCached(host)) {
+            return request.getResourceResolver().map(request, path);
+        }
+        final String key = String.format("%s %s %s", request.getResourceResolver().getUserID(), host, path);
+        final Segment segment = segments[Math.floorMod(key.hashCode(), SEGMENTS)];
+        final long current = generation.get();
+        String mapped = segment.get(key);
+        if (Objects.isNull(mapped)) {
+            mapped = request.getResourceResolver().map(request, path);
+            segment.put(key, mapped, current);
+        }
+        return mapped;
+    }
+
+    // the generation is changed first, so mappings done before are either cleared or not cached
+    @Override
+    public void handleEvent(final Event event) {
+        synchronized (hosts) {
+            generation.incrementAndGet();
+            hosts.clear();
+        }
+        for (final Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    private static SlingHttpServletRequest request(final Environment environment) throws TemplateModelException {
+        try {
+            return IncludeSupport.request(environment);
+        } catch (TemplateException e) {
+            throw new TemplateModelException(e);
+        }
+    }
+
+    private boolean isCached(final String host) {
+        synchronized (hosts) {
+            return hosts.contains(host) || hosts.size() < MAX_HOSTS && hosts.add(host);
+        }
+    }
+
+    private final class Segment {
+
+        private final Map<String, String> mappings = new LinkedHashMap<>(16, 0.75f, true);
+
+        Segment() { //
+        }
+
+        synchronized String get(final String key) {
+            return mappings.get(key);
+        }
+
+        // mappings done before the mapping changed are not cached
+        synchronized void put(final String key, final String mapped, final long mappedGeneration) {
+            if (mappedGeneration != generation.get()) {
+                return;
+            }
+            mappings.put(key, mapped);
+            if (mappings.size() > MAX_ENTRIES_PER_SEGMENT) {
+                final Iterator<String> iterator = mappings.keySet().iterator();
+                iterator.next();
+                iterator.remove();
+            }
+        }
+
+        synchronized void clear() {
+            mappings.clear();
+        }
+
+    }
+
+}
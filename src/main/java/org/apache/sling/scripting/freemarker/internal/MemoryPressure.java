@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.metatype.annotations.Designate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Notifies caches to shed entries when the heap is under pressure.
+ *
+ * <p>When enabled, the collection usage thresholds of the tenured heap pools are set to a percentage of their maximum
+ * size, so the JVM notifies when a pool is still filled above the threshold after a garbage collection. Notifications
+ * of thresholds set by others are ignored. The previous thresholds are restored on deactivation unless a threshold has
+ * been changed by others meanwhile.
+ *
+ * <p>Shed fragments stored off-heap release their direct buffers only when these are garbage collected.
+ */
+@Component(
+    service = MemoryPressure.class
+)
+@Designate(
+    ocd = MemoryPressureConfiguration.class
+)
+public final class MemoryPressure implements NotificationListener {
+
+    private static final int PERCENT = 100;
+
+    private final List<Runnable> relievers = new CopyOnWriteArrayList<>();
+
+    // collection usage thresholds of the pools before they were set
+    private final Map<MemoryPoolMXBean, Long> thresholds = new HashMap<>();
+
+    // collection usage thresholds set by pool name
+    private final Map<String, Long> ownThresholds = new HashMap<>();
+
+    private final Logger logger = LoggerFactory.getLogger(MemoryPressure.class);
+
+    public MemoryPressure() { //
+    }
+
+    @Activate
+    @SuppressWarnings("unused")
+    private void activate(final MemoryPressureConfiguration configuration) {
+        logger.debug("activate");
+        configure(configuration);
+        emitter().addNotificationListener(this, null, null);
+    }
+
+    @Modified
+    @SuppressWarnings("unused")
+    private void modified(final MemoryPressureConfiguration configuration) {
+        logger.debug("modified");
+        configure(configuration);
+    }
+
+    @Deactivate
+    @SuppressWarnings("unused")
+    private void deactivate() {
+        logger.debug("deactivate");
+        try {
+            emitter().removeNotificationListener(this);
+        } catch (ListenerNotFoundException e) {
+            logger.debug("listener not registered", e);
+        }
+        restore();
+    }
+
+    private synchronized void configure(final MemoryPressureConfiguration configuration) {
+        final int threshold = configuration.threshold();
+        if (threshold <= 0) {
+            restore();
+            return;
+        }
+        for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            final long max = pool.getUsage().getMax();
+            // only tenured pools support usage thresholds besides collection usage thresholds
+            if (isTenured(pool) && max > 0) {
+                // a threshold changed by others meanwhile is restored instead of the one before
+                if (!isOwnThreshold(pool)) {
+                    thresholds.put(pool, pool.getCollectionUsageThreshold());
+                }
+                final long collectionUsageThreshold = max / PERCENT * Math.min(threshold, PERCENT);
+                pool.setCollectionUsageThreshold(collectionUsageThreshold);
+                ownThresholds.put(pool.getName(), collectionUsageThreshold);
+                logger.debug("collection usage threshold of {} set to {}%", pool.getName(), threshold);
+            }
+        }
+    }
+
+    private synchronized void restore() {
+        for (final Map.Entry<MemoryPoolMXBean, Long> entry : thresholds.entrySet()) {
+            if (isOwnThreshold(entry.getKey())) {
+                entry.getKey().setCollectionUsageThreshold(entry.getValue());
+            } else {
+                logger.debug("collection usage threshold of {} changed by others, keeping it", entry.getKey().getName());
+            }
+        }
+        thresholds.clear();
+        ownThresholds.clear();
+    }
+
+    private boolean isOwnThreshold(final MemoryPoolMXBean pool) {
+        final Long ownThreshold = ownThresholds.get(pool.getName());
+        return ownThreshold != null && ownThreshold == pool.getCollectionUsageThreshold();
+    }
+
+    // a notification is caused by an own threshold if the pool's usage reached it
+    private synchronized boolean isOwnNotification(final MemoryNotificationInfo info) {
+        final Long ownThreshold = ownThresholds.get(info.getPoolName());
+        return ownThreshold != null && info.getUsage().getUsed() >= ownThreshold;
+    }
+
+    private static boolean isTenured(final MemoryPoolMXBean pool) {
+        return pool.getType() == MemoryType.HEAP && pool.isUsageThresholdSupported() && pool.isCollectionUsageThresholdSupported();
+    }
+
+    private static NotificationEmitter emitter() {
+        return (NotificationEmitter) ManagementFactory.getMemoryMXBean();
+    }
+
+    /**
+     * Registers a cache's reliever, which sheds entries when the heap is under pressure.
+     *
+     * @param reliever the reliever
+     */
+    void register(final Runnable reliever) {
+        relievers.add(reliever);
+    }
+
+    /**
+     * Unregisters a cache's reliever.
+     *
+     * @param reliever the reliever
+     */
+    void unregister(final Runnable reliever) {
+        relievers.remove(reliever);
+    }
+
+    @Override
+    public void handleNotification(final Notification notification, final Object handback) {
+        if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())
+            && notification.getUserData() instanceof CompositeData
+            && isOwnNotification(MemoryNotificationInfo.from((CompositeData) notification.getUserData()))) {
+            logger.info("heap still filled above threshold after garbage collection: {}", notification.getMessage());
+            relieve();
+        }
+    }
+
+    /**
+     * Lets all registered caches shed entries.
+     */
+    void relieve() {
+        for (final Runnable reliever : relievers) {
+            reliever.run();
+        }
+    }
+
+}
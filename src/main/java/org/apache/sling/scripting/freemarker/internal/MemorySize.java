@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.util.Collection;
+
+/**
+ * Estimates of the heap retained by cached objects, used to bound caches by bytes instead of entries.
+ *
+ * <p>The estimates assume a 64-bit JVM with compressed references and two bytes per character, which overestimates
+ * strings stored compactly in Latin-1.
+ */
+final class MemorySize {
+
+    // header, fields and array header of a string
+    private static final long STRING = 40;
+
+    // entry of a hash map including its share of the table
+    private static final long MAP_ENTRY = 48;
+
+    // header and fields of a collection
+    private static final long COLLECTION = 32;
+
+    // header of an array
+    private static final long ARRAY = 16;
+
+    // header and fields of a direct buffer and its cleaner
+    private static final long DIRECT_BUFFER = 160;
+
+    private static final long REFERENCE = 8;
+
+    // header and fields of a parsed template
+    private static final long TEMPLATE = 1024;
+
+    // source lines kept by the template and its tree of elements and expressions
+    private static final long TEMPLATE_PER_CHAR = 10;
+
+    private MemorySize() { //
+    }
+
+    /**
+     * Estimates the heap retained by a string.
+     *
+     * @param string the string
+     * @return the estimated number of bytes
+     */
+    static long of(final String string) {
+        return STRING + 2L * string.length();
+    }
+
+    /**
+     * Estimates the heap retained by a collection of strings.
+     *
+     * @param strings the strings
+     * @return the estimated number of bytes
+     */
+    static long of(final Collection<String> strings) {
+        long size = COLLECTION;
+        for (final String string : strings) {
+            size += REFERENCE + of(string);
+        }
+        return size;
+    }
+
+    /**
+     * Estimates the heap retained by a map entry, excluding its key and value.
+     *
+     * @return the estimated number of bytes
+     */
+    static long ofEntry() {
+        return MAP_ENTRY;
+    }
+
+    /**
+     * Estimates the heap retained by a template parsed from a source.
+     *
+     * @param sourceLength the length of the template's source
+     * @return the estimated number of bytes
+     */
+    static long ofTemplate(final int sourceLength) {
+        return TEMPLATE + TEMPLATE_PER_CHAR * sourceLength;
+    }
+
+    /**
+     * Estimates the heap retained by a byte array.
+     *
+     * @param length the length of the array
+     * @return the estimated number of bytes
+     */
+    static long ofBytes(final int length) {
+        return ARRAY + length;
+    }
+
+    /**
+     * Estimates the heap retained by a direct buffer, excluding its off-heap memory.
+     *
+     * @return the estimated number of bytes
+     */
+    static long ofDirectBuffer() {
+        return DIRECT_BUFFER;
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * Writer which writes pre-encoded static text directly to an {@link OutputStream} and encodes only dynamic text.
+ */
+final class PreEncodedTextWriter extends Writer {
+
+    private final OutputStream outputStream;
+
+    private final StaticText staticText;
+
+    private final Writer encoder;
+
+    private long preEncodedBytes;
+
+    PreEncodedTextWriter(final OutputStream outputStream, final StaticText staticText) {
+        this.outputStream = outputStream;
+        this.staticText = staticText;
+        this.encoder = new OutputStreamWriter(new UnflushedOutputStream(outputStream), staticText.getCharset());
+    }
+
+    Charset getCharset() {
+        return staticText.getCharset();
+    }
+
+    /**
+     * Returns the number of pre-encoded bytes of static text written.
+     *
+     * @return the number of bytes
+     */
+    long getPreEncodedBytes() {
+        return preEncodedBytes;
+    }
+
+    @Override
+    public void write(final char[] cbuf, final int off, final int len) throws IOException {
+        byte[] bytes = null;
+        if (off == 0 && len == cbuf.length) {
+            bytes = staticText.getBytes(cbuf);
+        }
+        if (bytes != null) {
+            encoder.flush();
+            outputStream.write(bytes);
+            preEncodedBytes += bytes.length;
+        } else {
+            encoder.write(cbuf, off, len);
+        }
+    }
+
+    @Override
+    public void write(final int c) throws IOException {
+        encoder.write(c);
+    }
+
+    @Override
+    public void write(final String str, final int off, final int len) throws IOException {
+        // never let Writer's reusable buffer reach write(char[], int, int)
+        encoder.write(str, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        encoder.flush();
+        outputStream.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    /**
+     * Passes bytes through but keeps the encoder from flushing the underlying stream.
+     */
+    private static final class UnflushedOutputStream extends OutputStream {
+
+        private final OutputStream outputStream;
+
+        UnflushedOutputStream(final OutputStream outputStream) {
+            this.outputStream = outputStream;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            outputStream.write(b);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            outputStream.write(b, off, len);
+        }
+
+    }
+
+}
@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.util.Arrays;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.request.RequestProgressTracker;
+
+/**
+ * Records timings of FreeMarker renderings, template parsing and includes in Sling's {@link RequestProgressTracker}.
+ *
+ * <p>Nested steps (e.g. a template rendered by an include of another template) are named after their parent steps,
+ * so the timers form a tree like {@code FreeMarker render /apps/a/html.ftl > include /content/b > render
+ * /apps/b/html.ftl}.
+ *
+ * <p>With allocation tracing enabled for a rendering, the bytes allocated by the rendering thread are logged with every
+ * step of the rendering, including the steps of nested renderings.
+ */
+final class RenderTrace {
+
+    private static final String ATTRIBUTE = "org.apache.sling.scripting.freemarker.trace";
+
+    private static final String SEPARATOR = " > ";
+
+    private final SlingHttpServletRequest request;
+
+    private final RequestProgressTracker tracker;
+
+    private final RenderTrace parent;
+
+    private final String name;
+
+    private final boolean allocations;
+
+    private final long allocationStart;
+
+    private long stepStart;
+
+    private long stepTime;
+
+    private RenderTrace(final SlingHttpServletRequest request, final String step, final boolean allocations) {
+        this.request = request;
+        if (request != null) {
+            tracker = request.getRequestProgressTracker();
+            parent = parent(request);
+        } else {
+            tracker = null;
+            parent = null;
+        }
+        if (parent != null) {
+            name = parent.name + SEPARATOR + step;
+            this.allocations = parent.allocations || allocations;
+        } else {
+            name = "FreeMarker " + step;
+            this.allocations = allocations;
+        }
+        allocationStart = allocatedBytes();
+    }
+
+    private static RenderTrace parent(final SlingHttpServletRequest request) {
+        final Object parent = request.getAttribute(ATTRIBUTE);
+        if (parent instanceof RenderTrace) {
+            return (RenderTrace) parent;
+        }
+        return null;
+    }
+
+    /**
+     * Starts tracing a step, which becomes the parent of steps started until it ends.
+     *
+     * @param request the current request, may be {@code null}
+     * @param step    the step's description
+     * @return the started trace
+     */
+    static RenderTrace start(final SlingHttpServletRequest request, final String step) {
+        return start(request, step, false);
+    }
+
+    /**
+     * Starts tracing a step, which becomes the parent of steps started until it ends.
+     *
+     * @param request     the current request, may be {@code null}
+     * @param step        the step's description
+     * @param allocations whether to trace the bytes allocated in this and in nested steps
+     * @return the started trace
+     */
+    static RenderTrace start(final SlingHttpServletRequest request, final String step, final boolean allocations) {
+        final RenderTrace renderTrace = new RenderTrace(request, step, allocations);
+        if (renderTrace.tracker != null) {
+            request.setAttribute(ATTRIBUTE, renderTrace);
+            renderTrace.tracker.startTimer(renderTrace.name);
+        }
+        return renderTrace;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the time spent in steps timed with {@link #startTimer(String)} and {@link #logTimer(String, String,
+     * Object...)}, i.e. parsing the template.
+     *
+     * @return the time in nanoseconds
+     */
+    long getStepTime() {
+        return stepTime;
+    }
+
+    void startTimer(final String step) {
+        stepStart = System.nanoTime();
+        if (tracker != null) {
+            tracker.startTimer(name + SEPARATOR + step);
+        }
+    }
+
+    void logTimer(final String step, final String format, final Object... args) {
+        stepTime += System.nanoTime() - stepStart;
+        if (tracker != null) {
+            tracker.logTimer(name + SEPARATOR + step, format, args);
+        }
+    }
+
+    /**
+     * Ends the step, logging its elapsed time with a message.
+     *
+     * @param format message format as used by {@link RequestProgressTracker#logTimer(String, String, Object...)}
+     * @param args   message arguments
+     */
+    void end(final String format, final Object... args) {
+        if (tracker != null) {
+            if (allocations) {
+                tracker.logTimer(name, format.concat(", allocated {").concat(String.valueOf(args.length)).concat("} bytes"), append(args, allocatedBytes() - allocationStart));
+            } else {
+                tracker.logTimer(name, format, args);
+            }
+            request.setAttribute(ATTRIBUTE, parent);
+        }
+    }
+
+    /**
+     * Returns the bytes allocated by the rendering thread if allocations are traced.
+     *
+     * @return the number of bytes or {@code 0} if allocations are not traced
+     */
+    long allocatedBytes() {
+        if (allocations) {
+            return ThreadAllocations.current();
+        }
+        return 0;
+    }
+
+    /**
+     * Logs the bytes allocated in a step of the rendering if allocations are traced.
+     *
+     * @param step  the step's description
+     * @param start the bytes allocated by the rendering thread when the step started
+     */
+    void logAllocations(final String step, final long start) {
+        if (allocations && tracker != null) {
+            tracker.log("{0}, allocated {1} bytes", name + SEPARATOR + step, String.valueOf(allocatedBytes() - start));
+        }
+    }
+
+    private static Object[] append(final Object[] args, final long allocated) {
+        final Object[] appended = Arrays.copyOf(args, args.length + 1);
+        appended[args.length] = String.valueOf(allocated);
+        return appended;
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.io.FileNotFoundException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.Servlet;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.scripting.SlingScript;
+import org.apache.sling.api.servlets.ServletResolver;
+
+/**
+ * Collects the resources of a tree which are rendered by a FreeMarker {@code html} script, resolved by the
+ * {@link ServletResolver} for their resource type or one of its super types.
+ */
+final class ScriptCollector {
+
+    private static final String SCRIPT_NAME = "html";
+
+    private static final String FREEMARKER_SCRIPT_EXTENSION = ".ftl";
+
+    private ScriptCollector() { //
+    }
+
+    /**
+     * Collects a resource and its descendants having a FreeMarker script.
+     *
+     * @param resourceResolver the resource resolver to get the resources with
+     * @param path             the path of the root of the resource tree
+     * @param servletResolver  the servlet resolver to resolve the scripts with
+     * @return the paths of the scripts by resource path in traversal order
+     * @throws FileNotFoundException if the root resource does not exist
+     */
+    static Map<String, String> collect(final ResourceResolver resourceResolver, final String path, final ServletResolver servletResolver) throws FileNotFoundException {
+        final Resource root = resourceResolver.getResource(path);
+        if (root == null) {
+            throw new FileNotFoundException(String.format("resource %s not found", path));
+        }
+        final Map<String, String> scripts = new LinkedHashMap<>();
+        collect(root, servletResolver, new HashMap<>(), scripts);
+        return scripts;
+    }
+
+    // caches the scripts by resource type and super type
+    private static void collect(final Resource resource, final ServletResolver servletResolver, final Map<String, String> scriptsByType, final Map<String, String> scripts) {
+        final String type = resource.getResourceType() + '\n' + resource.getResourceSuperType();
+        final String script = scriptsByType.computeIfAbsent(type, t -> script(resource, servletResolver));
+        if (!script.isEmpty()) {
+            scripts.put(resource.getPath(), script);
+        }
+        final Iterator<Resource> children = resource.listChildren();
+        while (children.hasNext()) {
+            collect(children.next(), servletResolver, scriptsByType, scripts);
+        }
+    }
+
+    // the path of the FreeMarker script rendering the resource, empty if it is rendered otherwise or not at all
+    private static String script(final Resource resource, final ServletResolver servletResolver) {
+        final Servlet servlet = servletResolver.resolveServlet(resource, SCRIPT_NAME);
+        if (servlet instanceof SlingScript) {
+            final String path = ((SlingScript) servlet).getScriptResource().getPath();
+            if (path.endsWith(FREEMARKER_SCRIPT_EXTENSION)) {
+                return path;
+            }
+        }
+        return "";
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Logs renderings exceeding a configurable threshold, at most once per interval and script, also to the request progress
+ * tracker.
+ */
+final class SlowRenderingLog {
+
+    private final Map<String, Long> logTimes = new ConcurrentHashMap<>();
+
+    private volatile long threshold;
+
+    private volatile long interval;
+
+    private final Logger logger = LoggerFactory.getLogger(SlowRenderingLog.class);
+
+    SlowRenderingLog() { //
+    }
+
+    /**
+     * Configures the log.
+     *
+     * @param threshold the threshold in milliseconds, {@code 0} disables logging
+     * @param interval  the minimum interval between two logs for the same script in seconds
+     */
+    void configure(final long threshold, final long interval) {
+        this.threshold = TimeUnit.MILLISECONDS.toNanos(threshold);
+        this.interval = TimeUnit.SECONDS.toMillis(interval);
+        logTimes.clear();
+    }
+
+    boolean isEnabled() {
+        return threshold > 0;
+    }
+
+    /**
+     * Logs a rendering if it exceeded the threshold and the script has not been logged within the interval.
+     *
+     * @param script        the path of the rendered script
+     * @param request       the request, may be {@code null}
+     * @param time          the total rendering time in nanoseconds
+     * @param parseTime     the time spent parsing the template in nanoseconds
+     * @param hotspotWriter the writer which located the instruction writing after the longest pause
+     */
+    @SuppressWarnings("checkstyle:AvoidInlineConditionals")
+    void log(final String script, final SlingHttpServletRequest request, final long time, final long parseTime, final HotspotWriter hotspotWriter) {
+        if (isEnabled() && time >= threshold && isDue(script)) {
+            final String resource = request != null ? request.getResource().getPath() : null;
+            // instructions are timed by the pause before their first write, see HotspotWriter
+            final String message = String.format("slow rendering of script %s for resource %s: %d ms total, %d ms parsing, longest pause between writes %d ms"
+                    + " before instruction %s (includes the time of preceding instructions without output)",
+                script,
+                resource,
+                TimeUnit.NANOSECONDS.toMillis(time),
+                TimeUnit.NANOSECONDS.toMillis(parseTime),
+                TimeUnit.NANOSECONDS.toMillis(hotspotWriter.getSlowestTime()),
+                hotspotWriter.getSlowestInstruction()
+            );
+            logger.warn(message);
+            if (request != null) {
+                request.getRequestProgressTracker().log(message);
+            }
+        }
+    }
+
+    @SuppressWarnings("checkstyle:AvoidInlineConditionals")
+    private boolean isDue(final String script) {
+        final long now = System.currentTimeMillis();
+        final long logTime = logTimes.merge(script, now, (last, current) -> current - last >= interval ? current : last);
+        return logTime == now;
+    }
+
+}
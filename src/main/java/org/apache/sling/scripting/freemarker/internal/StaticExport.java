@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.scripting.freemarker.StaticExportListener;
+import org.apache.sling.scripting.freemarker.TemplateRenderer;
+
+/**
+ * A running static export, rendering resources with a pool of cloned resource resolvers.
+ */
+final class StaticExport implements AutoCloseable {
+
+    private static final String EXTENSION = ".html";
+
+    private static final String THREAD_NAME = "sling-freemarker-export-%d";
+
+    private final TemplateRenderer templateRenderer;
+
+    private final Function<Resource, Map<String, Object>> dataModels;
+
+    private final Path directory;
+
+    private final StaticExportListener listener;
+
+    private final int total;
+
+    private final AtomicInteger completed = new AtomicInteger();
+
+    private final BlockingQueue<ResourceResolver> resourceResolvers = new LinkedBlockingQueue<>();
+
+    /**
+     * Starts an export.
+     *
+     * @param templateRenderer        the renderer for the resources' scripts
+     * @param dataModels              the function creating the data model for a resource
+     * @param resourceResolver        the resource resolver to clone for the renderings
+     * @param resolvers               the number of resource resolvers to clone, i.e. the number of parallel renderings
+     * @param directory               the absolute and normalized directory to write the files to
+     * @param listener                the listener notified of the progress
+     * @param total                   the total number of resources to export
+     * @throws LoginException if cloning the resource resolver fails
+     */
+    StaticExport(final TemplateRenderer templateRenderer, final Function<Resource, Map<String, Object>> dataModels, final ResourceResolver resourceResolver, final int resolvers, final Path directory, final StaticExportListener listener, final int total) throws LoginException {
+        this.templateRenderer = templateRenderer;
+        this.dataModels = dataModels;
+        this.directory = directory;
+        this.listener = listener;
+        this.total = total;
+        for (int i = 0; i < resolvers; i++) {
+            resourceResolvers.add(resourceResolver.clone(null));
+        }
+    }
+
+    /**
+     * Exports resources with a dedicated pool of one thread per resource resolver, the threads taking the resources
+     * from a shared queue.
+     *
+     * @param scripts the paths of the scripts by resource path
+     * @return the number of exported resources
+     * @throws IOException if the export is interrupted
+     */
+    int exportAll(final Map<String, String> scripts) throws IOException {
+        final Queue<Map.Entry<String, String>> queue = new ConcurrentLinkedQueue<>(scripts.entrySet());
+        final AtomicInteger exported = new AtomicInteger();
+        final int threads = resourceResolvers.size();
+        final AtomicInteger counter = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> new Thread(runnable, String.format(THREAD_NAME, counter.incrementAndGet())));
+        try {
+            for (int i = 0; i < threads; i++) {
+                executor.execute(() -> exportQueued(queue, exported));
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            return exported.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("exporting interrupted");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void exportQueued(final Queue<Map.Entry<String, String>> queue, final AtomicInteger exported) {
+        Map.Entry<String, String> entry = queue.poll();
+        while (entry != null && !Thread.currentThread().isInterrupted()) {
+            if (export(entry.getKey(), entry.getValue())) {
+                exported.incrementAndGet();
+            }
+            entry = queue.poll();
+        }
+    }
+
+    /**
+     * Renders a resource with a script and writes the output to a file, notifying the listener.
+     *
+     * @param path   the path of the resource
+     * @param script the path of the script
+     * @return {@code true} if the resource has been exported, {@code false} otherwise
+     */
+    @SuppressWarnings("checkstyle:IllegalCatch")
+    boolean export(final String path, final String script) {
+        final long start = System.nanoTime();
+        try {
+            final Path file = render(path, script);
+            listener.exported(path, file, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), completed.incrementAndGet(), total);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            listener.failed(path, e, completed.incrementAndGet(), total);
+            return false;
+        }
+    }
+
+    private Path render(final String path, final String script) throws IOException {
+        final ResourceResolver resourceResolver = take();
+        try {
+            final Resource resource = resourceResolver.getResource(path);
+            if (resource == null) {
+                throw new FileNotFoundException(String.format("resource %s not found", path));
+            }
+            final Path file = file(path);
+            final Path parent = file.getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                templateRenderer.render(resourceResolver, script, dataModels.apply(resource), writer);
+            }
+            return file;
+        } finally {
+            resourceResolvers.add(resourceResolver);
+        }
+    }
+
+    private ResourceResolver take() throws InterruptedIOException {
+        try {
+            return resourceResolvers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("waiting for resource resolver interrupted");
+        }
+    }
+
+    private Path file(final String path) throws IOException {
+        final Path file = directory.resolve(path.substring(1) + EXTENSION).normalize();
+        if (!file.startsWith(directory)) {
+            throw new IOException(String.format("file for resource %s is outside of %s", path, directory));
+        }
+        return file;
+    }
+
+    @Override
+    public void close() {
+        for (final ResourceResolver resourceResolver : resourceResolvers) {
+            resourceResolver.close();
+        }
+        resourceResolvers.clear();
+    }
+
+}
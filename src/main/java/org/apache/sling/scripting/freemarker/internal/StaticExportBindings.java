@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.Function;
+
+import javax.script.Bindings;
+import javax.script.SimpleBindings;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.scripting.SlingBindings;
+import org.apache.sling.scripting.api.BindingsValuesProvider;
+import org.apache.sling.scripting.api.BindingsValuesProvidersByContext;
+
+/**
+ * Creates the bindings of a script rendered without request as data model for a resource: {@code resource} and
+ * {@code resolver}, completed by the bindings values providers.
+ */
+final class StaticExportBindings implements Function<Resource, Map<String, Object>> {
+
+    // the name of the resolver binding, added to SlingBindings in later Sling API versions
+    private static final String RESOLVER = "resolver";
+
+    private final Collection<BindingsValuesProvider> bindingsValuesProviders;
+
+    /**
+     * Gets the bindings values providers for FreeMarker scripts in the default context.
+     *
+     * @param bindingsValuesProvidersByContext the bindings values providers by context
+     * @param scriptEngineFactory              the FreeMarker script engine factory
+     */
+    StaticExportBindings(final BindingsValuesProvidersByContext bindingsValuesProvidersByContext, final FreemarkerScriptEngineFactory scriptEngineFactory) {
+        this.bindingsValuesProviders = bindingsValuesProvidersByContext.getBindingsValuesProviders(scriptEngineFactory, BindingsValuesProvider.DEFAULT_CONTEXT);
+    }
+
+    @Override
+    public Map<String, Object> apply(final Resource resource) {
+        final Bindings bindings = new SimpleBindings();
+        bindings.put(SlingBindings.RESOURCE, resource);
+        bindings.put(RESOLVER, resource.getResourceResolver());
+        for (final BindingsValuesProvider bindingsValuesProvider : bindingsValuesProviders) {
+            bindingsValuesProvider.addBindings(bindings);
+        }
+        return bindings;
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.lang.reflect.Field;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import freemarker.core.TextBlock;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Static text segments of a template pre-encoded in a given charset.
+ *
+ * <p>FreeMarker writes a text block by passing the block's own {@code char} array to the writer, which is never changed
+ * after parsing. The arrays are taken from the text blocks of the parsed template and the encoded segments are looked
+ * up by their identity only, so arrays of other writers are never matched. FreeMarker's text blocks are not public API,
+ * so if their arrays cannot be accessed, no text is pre-encoded.
+ *
+ * <p>Only stateless charsets are supported, i.e. charsets encoding a text as the concatenation of the encodings of its
+ * parts. E.g. UTF-16 starts every encoding with a byte order mark and ISO-2022-JP switches between character sets with
+ * escape sequences.
+ */
+final class StaticText {
+
+    private static final Field TEXT = textField();
+
+    private static final String SAMPLES = "aé日";
+
+    private static final Map<Charset, Boolean> STATELESS = new ConcurrentHashMap<>();
+
+    private final Charset charset;
+
+    // encoded segments by the array of their text block
+    private final Map<char[], byte[]> segments = new IdentityHashMap<>();
+
+    StaticText(final Collection<char[]> texts, final Charset charset) {
+        this.charset = charset;
+        for (final char[] text : texts) {
+            segments.put(text, new String(text).getBytes(charset));
+        }
+    }
+
+    @SuppressWarnings("checkstyle:IllegalCatch")
+    private static Field textField() {
+        try {
+            final Field field = TextBlock.class.getDeclaredField("text");
+            field.setAccessible(true);
+            return field;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LoggerFactory.getLogger(StaticText.class).error("accessing FreeMarker's text blocks failed, static text is not pre-encoded", e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the array a text block writes.
+     *
+     * @param textBlock the text block
+     * @return the array or {@code null} if it cannot be accessed
+     */
+    static char[] text(final TextBlock textBlock) {
+        char[] text = null;
+        if (TEXT != null) {
+            try {
+                text = (char[]) TEXT.get(textBlock);
+            } catch (IllegalAccessException | ClassCastException e) {
+                LoggerFactory.getLogger(StaticText.class).error("accessing text block failed, static text is not pre-encoded", e);
+            }
+        }
+        return text;
+    }
+
+    /**
+     * Checks whether static text can be pre-encoded in a charset.
+     *
+     * @param charset the charset
+     * @return {@code true} if the charset is stateless, {@code false} otherwise
+     */
+    static boolean supports(final Charset charset) {
+        return TEXT != null && STATELESS.computeIfAbsent(charset, StaticText::isStateless);
+    }
+
+    private static boolean isStateless(final Charset charset) {
+        if (!charset.canEncode()) {
+            return false;
+        }
+        final CharsetEncoder encoder = charset.newEncoder();
+        boolean stateless = true;
+        for (final char sample : SAMPLES.toCharArray()) {
+            if (encoder.canEncode(sample)) {
+                final byte[] single = String.valueOf(sample).getBytes(charset);
+                final byte[] twice = new String(new char[] {sample, sample}).getBytes(charset);
+                final byte[] concatenated = Arrays.copyOf(single, single.length * 2);
+                System.arraycopy(single, 0, concatenated, single.length, single.length);
+                stateless &= Arrays.equals(twice, concatenated);
+            }
+        }
+        return stateless;
+    }
+
+    Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Estimates the heap retained by the encoded segments.
+     *
+     * @return the estimated number of bytes
+     */
+    long getWeight() {
+        long weight = 0;
+        for (final byte[] bytes : segments.values()) {
+            weight += MemorySize.ofEntry() + MemorySize.ofBytes(bytes.length);
+        }
+        return weight;
+    }
+
+    /**
+     * Returns the pre-encoded bytes for a static text block.
+     *
+     * @param chars the characters as written by FreeMarker
+     * @return the encoded bytes or {@code null} if the characters are not the array of a text block of the template
+     */
+    byte[] getBytes(final char[] chars) {
+        return segments.get(chars);
+    }
+
+}
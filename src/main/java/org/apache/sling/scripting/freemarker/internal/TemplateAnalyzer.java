@@ -0,0 +1,231 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import freemarker.template.Template;
+import org.apache.sling.scripting.freemarker.TemplateFinding;
+import org.apache.sling.scripting.freemarker.TemplateFinding.Rule;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds patterns expensive to render in the tree of a parsed template.
+ *
+ * <p>Elements are checked by their type and by the expressions they evaluate. FreeMarker's expressions are not public
+ * API, so they are accessed reflectively as in {@link TemplateOptimizer}. If they cannot be accessed, an error is
+ * logged and no findings are reported. Each enclosing {@code #list}, {@code #foreach} or {@code #items} loop multiplies
+ * the cost of a pattern by ten. A {@code #list} with an {@code #items} counts once.
+ */
+@SuppressWarnings("deprecation")
+final class TemplateAnalyzer {
+
+    private static final long LOOP_FACTOR = 10;
+
+    private static final long ADAPT_TO_COST = 10;
+
+    private static final long INCLUDE_COST = 100;
+
+    private static final long EVAL_COST = 20;
+
+    private static final long CHILDREN_COST = 10;
+
+    private static final String CORE_PACKAGE = "freemarker.core.";
+
+    // #list and #foreach
+    private static final String ITERATOR_BLOCK = "IteratorBlock";
+
+    private static final String ITEMS = "Items";
+
+    private static final String UNIFIED_CALL = "UnifiedCall";
+
+    private static final String METHOD_CALL = "MethodCall";
+
+    private static final String DOT = "Dot";
+
+    private static final String ADAPT_TO = "sling.adaptTo";
+
+    private static final Set<String> TEXT_ELEMENTS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList("TextBlock", "Comment")));
+
+    private static final Set<String> INCLUDES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList("sling.include", "sling.includeAll")));
+
+    private static final Set<String> EVAL_BUILT_INS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList("eval", "eval_json", "interpret")));
+
+    private static final Set<String> CHILDREN = Collections.unmodifiableSet(new HashSet<>(Arrays.asList("children", "getChildren", "listChildren")));
+
+    private static final Parameters PARAMETERS = Parameters.lookup();
+
+    private TemplateAnalyzer() { //
+    }
+
+    /**
+     * Analyzes a parsed template.
+     *
+     * @param template the parsed template
+     * @return the findings ordered by location
+     */
+    static List<TemplateFinding> analyze(final Template template) {
+        final List<TemplateFinding> findings = new ArrayList<>();
+        if (!Objects.isNull(PARAMETERS)) {
+            try {
+                analyze(template.getRootTreeNode(), template.getName(), 0, findings);
+            } catch (ReflectiveOperationException e) {
+                LoggerFactory.getLogger(TemplateAnalyzer.class).error("analyzing template {} failed", template.getName(), e);
+                findings.clear();
+            }
+        }
+        findings.sort(Comparator.comparingInt(TemplateFinding::getLine).thenComparingInt(TemplateFinding::getColumn));
+        return findings;
+    }
+
+    private static void analyze(final freemarker.core.TemplateElement element, final String name, final int loops, final List<TemplateFinding> findings) throws ReflectiveOperationException {
+        final String type = type(element);
+        if (!TEXT_ELEMENTS.contains(type)) {
+            if (ITERATOR_BLOCK.equals(type) && CHILDREN.contains(memberName(PARAMETERS.value(element, 0)))) {
+                findings.add(finding(element, name, Rule.UNBOUNDED_CHILDREN, String.format("%s iterates over all children", element.getDescription()), CHILDREN_COST, loops));
+            }
+            if (loops > 0 && UNIFIED_CALL.equals(type) && INCLUDES.contains(canonicalForm(PARAMETERS.value(element, 0)))) {
+                findings.add(finding(element, name, Rule.INCLUDE_IN_LOOP, String.format("%s includes in a loop", element.getDescription()), INCLUDE_COST, loops));
+            }
+            check(element, element, name, loops, findings);
+            int nestedLoops = loops;
+            if (isLoop(element)) {
+                nestedLoops++;
+            }
+            for (int i = 0; i < element.getChildCount(); i++) {
+                analyze((freemarker.core.TemplateElement) element.getChildAt(i), name, nestedLoops, findings);
+            }
+        }
+    }
+
+    // checks the expressions evaluated by an element
+    private static void check(final freemarker.core.TemplateElement element, final Object object, final String name, final int loops, final List<TemplateFinding> findings) throws ReflectiveOperationException {
+        for (int i = 0; i < PARAMETERS.count(object); i++) {
+            final Object expression = PARAMETERS.value(object, i);
+            if (expression instanceof freemarker.core.TemplateObject && !(expression instanceof freemarker.core.TemplateElement)) {
+                if (loops > 0 && METHOD_CALL.equals(type(expression)) && ADAPT_TO.equals(canonicalForm(PARAMETERS.value(expression, 0)))) {
+                    findings.add(finding(element, name, Rule.ADAPT_TO_IN_LOOP, String.format("%s adapts in a loop", canonicalForm(expression)), ADAPT_TO_COST, loops));
+                }
+                if (PARAMETERS.isBuiltIn(expression) && EVAL_BUILT_INS.contains(memberName(expression))) {
+                    findings.add(finding(element, name, Rule.EVAL, String.format("%s parses a string while rendering", canonicalForm(expression)), EVAL_COST, loops));
+                }
+                check(element, expression, name, loops, findings);
+            }
+        }
+    }
+
+    // #items loops instead of its enclosing #list
+    private static boolean isLoop(final freemarker.core.TemplateElement element) {
+        final String type = type(element);
+        return ITEMS.equals(type) || ITERATOR_BLOCK.equals(type) && !hasItems(element);
+    }
+
+    private static boolean hasItems(final freemarker.core.TemplateElement element) {
+        boolean items = false;
+        for (int i = 0; i < element.getChildCount() && !items; i++) {
+            final freemarker.core.TemplateElement child = (freemarker.core.TemplateElement) element.getChildAt(i);
+            final String type = type(child);
+            items = ITEMS.equals(type) || !ITERATOR_BLOCK.equals(type) && hasItems(child);
+        }
+        return items;
+    }
+
+    // the name of the property, built-in or method an expression ends with, null for other expressions
+    private static String memberName(final Object expression) throws ReflectiveOperationException {
+        final String type = type(expression);
+        Object memberName = null;
+        if (METHOD_CALL.equals(type)) {
+            memberName = memberName(PARAMETERS.value(expression, 0));
+        } else if (DOT.equals(type) || PARAMETERS.isBuiltIn(expression)) {
+            memberName = PARAMETERS.value(expression, 1);
+        }
+        if (memberName instanceof String) {
+            return (String) memberName;
+        }
+        return null;
+    }
+
+    private static String canonicalForm(final Object expression) {
+        if (expression instanceof freemarker.core.TemplateObject) {
+            return ((freemarker.core.TemplateObject) expression).getCanonicalForm();
+        }
+        return null;
+    }
+
+    private static String type(final Object object) {
+        return object.getClass().getName().substring(CORE_PACKAGE.length());
+    }
+
+    private static TemplateFinding finding(final freemarker.core.TemplateElement element, final String name, final Rule rule, final String message, final long cost, final int loops) {
+        long estimatedCost = cost;
+        for (int i = 0; i < loops; i++) {
+            estimatedCost *= LOOP_FACTOR;
+        }
+        return new TemplateFinding(name, element.getBeginLine(), element.getBeginColumn(), rule, message, estimatedCost);
+    }
+
+    private static final class Parameters {
+
+        private final Method count;
+
+        private final Method value;
+
+        private final Class<?> builtIn;
+
+        Parameters() throws ReflectiveOperationException {
+            count = freemarker.core.TemplateObject.class.getDeclaredMethod("getParameterCount");
+            count.setAccessible(true);
+            value = freemarker.core.TemplateObject.class.getDeclaredMethod("getParameterValue", int.class);
+            value.setAccessible(true);
+            builtIn = Class.forName(CORE_PACKAGE.concat("BuiltIn"));
+        }
+
+        @SuppressWarnings("checkstyle:IllegalCatch")
+        static Parameters lookup() {
+            try {
+                return new Parameters();
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                LoggerFactory.getLogger(TemplateAnalyzer.class).error("accessing FreeMarker's template tree failed, templates are not analyzed", e);
+                return null;
+            }
+        }
+
+        int count(final Object object) throws ReflectiveOperationException {
+            return (Integer) count.invoke(object);
+        }
+
+        Object value(final Object object, final int index) throws ReflectiveOperationException {
+            return value.invoke(object, index);
+        }
+
+        boolean isBuiltIn(final Object object) {
+            return builtIn.isInstance(object);
+        }
+
+    }
+
+}
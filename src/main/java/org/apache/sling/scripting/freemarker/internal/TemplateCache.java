@@ -0,0 +1,354 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.commons.metrics.Meter;
+import org.apache.sling.commons.metrics.MetricsService;
+import org.apache.sling.scripting.freemarker.TemplateFinding;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache for parsed templates keyed by script path and validated by the script's modification time.
+ *
+ * <p>Scripts with identical sources in the same folder share one parsed template, which is looked up by a digest of
+ * the source as long as any cached script uses it. Relative includes and imports are resolved against the name of the
+ * parsed template, so scripts in other folders do not share it.
+ *
+ * <p>A cache with a maximum size or a maximum of estimated heap bytes evicts its least recently used templates first.
+ * A shared template is estimated once and a template estimated larger than the maximum bytes is not cached. Under
+ * memory pressure the cache sheds half of its estimated bytes.
+ *
+ * <p>With checking enabled, patterns expensive to render are logged when a template is parsed, e.g. while warming up
+ * the cache.
+ *
+ * <p>With revalidation enabled, a modified template is parsed in the background and the cached version is used until
+ * the modified one has been parsed successfully.
+ */
+final class TemplateCache implements CacheMBean {
+
+    private static final String PARSE_STEP = "parse";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private final TemplateCacheEntries templates = new TemplateCacheEntries();
+
+    // parsed templates by folder and digest of their source, released when no cached script uses them anymore
+    private final Map<String, SharedTemplate> sharedTemplates = new ConcurrentHashMap<>();
+
+    private final ReferenceQueue<Template> releasedTemplates = new ReferenceQueue<>();
+
+    private final TemplateOptimizer templateOptimizer = new TemplateOptimizer();
+
+    private volatile boolean optimize;
+
+    private volatile boolean check;
+
+    private volatile TemplateRevalidator revalidator;
+
+    private volatile int maxSize;
+
+    private volatile long maxBytes;
+
+    private final Meter hits;
+
+    private final Meter misses;
+
+    private final Meter evictions;
+
+    private final Meter shares;
+
+    private final Logger logger = LoggerFactory.getLogger(TemplateCache.class);
+
+    TemplateCache(final MetricsService metricsService, final String metricsPrefix) {
+        this.hits = metricsService.meter(metricsPrefix.concat("hits"));
+        this.misses = metricsService.meter(metricsPrefix.concat("misses"));
+        this.evictions = metricsService.meter(metricsPrefix.concat("evictions"));
+        this.shares = metricsService.meter(metricsPrefix.concat("shares"));
+    }
+
+    /**
+     * Configures the cache, changing whether templates are optimized discards the cached templates.
+     *
+     * @param optimize    whether parsed templates are optimized before they are cached
+     * @param maxSize     the maximum number of cached templates, {@code 0} for no limit
+     * @param maxBytes    the maximum estimated heap bytes of cached templates, {@code 0} for no limit
+     * @param check       whether parsed templates are checked for patterns expensive to render
+     * @param revalidator the revalidator parsing modified templates in the background when enabled
+     */
+    void configure(final boolean optimize, final int maxSize, final long maxBytes, final boolean check, final TemplateRevalidator revalidator) {
+        this.revalidator = revalidator;
+        this.check = check;
+        this.maxSize = maxSize;
+        this.maxBytes = maxBytes;
+        evict(maxSize, maxBytes);
+        if (this.optimize != optimize) {
+            this.optimize = optimize;
+            templates.clear();
+            sharedTemplates.clear();
+        }
+    }
+
+    /**
+     * Returns the parsed template for a script resource outside of a request, parsing it only if it is not cached or
+     * has been modified.
+     *
+     * @param scriptResource the script resource
+     * @param reader         the reader for the script's source
+     * @param configuration  the configuration to parse the template with
+     * @return the parsed template
+     * @throws IOException if reading or parsing the template fails
+     */
+    CachedTemplate getTemplate(final Resource scriptResource, final Reader reader, final Configuration configuration) throws IOException {
+        return getTemplate(scriptResource, reader, configuration, null);
+    }
+
+    /**
+     * Returns the parsed template for a script resource, parsing it only if it is not cached or has been modified.
+     *
+     * @param scriptResource the script resource
+     * @param reader         the reader for the script's source
+     * @param configuration  the configuration to parse the template with
+     * @param trace          the trace of the current rendering or {@code null}
+     * @return the parsed template
+     * @throws IOException if reading or parsing the template fails
+     */
+    CachedTemplate getTemplate(final Resource scriptResource, final Reader reader, final Configuration configuration, final RenderTrace trace) throws IOException {
+        final String name = scriptResource.getPath();
+        final long lastModified = scriptResource.getResourceMetadata().getModificationTime();
+        final CachedTemplate cachedTemplate = templates.get(name);
+        final CachedTemplate template;
+        if (cachedTemplate != null && cachedTemplate.isValid(lastModified, configuration)) {
+            template = hit(cachedTemplate);
+        } else if (isRevalidated(cachedTemplate, lastModified, configuration)) {
+            revalidate(name, lastModified, reader, configuration, cachedTemplate);
+            template = hit(cachedTemplate);
+        } else {
+            misses.mark();
+            if (trace != null) {
+                trace.startTimer(PARSE_STEP);
+            }
+            template = parse(name, reader, configuration, lastModified);
+            if (trace != null) {
+                trace.logTimer(PARSE_STEP, "");
+            }
+            // without a modification time changes cannot be detected
+            if (lastModified > 0) {
+                cache(template);
+            }
+        }
+        return template;
+    }
+
+    private void cache(final CachedTemplate template) {
+        if (isTooLarge(template)) {
+            templates.remove(template.getName());
+        } else {
+            templates.put(template);
+            evict(maxSize, maxBytes);
+        }
+    }
+
+    private boolean isTooLarge(final CachedTemplate template) {
+        return exceeds(template.getWeight() + template.getTemplateWeight(), maxBytes);
+    }
+
+    private CachedTemplate hit(final CachedTemplate cachedTemplate) {
+        hits.mark();
+        cachedTemplate.touch();
+        return cachedTemplate;
+    }
+
+    /**
+     * Sheds the least recently used templates until half of the estimated heap bytes are released.
+     */
+    void shed() {
+        final int entries = templates.size();
+        evict(0, templates.getBytes() / 2);
+        logger.debug("shed {} of {} templates", entries - templates.size(), entries);
+    }
+
+    private void evict(final int maxSize, final long maxBytes) {
+        if (isExceeded(maxSize, maxBytes)) {
+            final List<CachedTemplate> eldest = templates.leastRecentlyUsed();
+            for (int i = 0; i < eldest.size() && isExceeded(maxSize, maxBytes); i++) {
+                if (templates.remove(eldest.get(i))) {
+                    evictions.mark();
+                }
+            }
+        }
+    }
+
+    private boolean isExceeded(final int maxSize, final long maxBytes) {
+        return exceeds(templates.size(), maxSize) || exceeds(templates.getBytes(), maxBytes);
+    }
+
+    private static boolean exceeds(final long value, final long max) {
+        return max > 0 && value > max;
+    }
+
+    @Override
+    public int getEntries() {
+        return templates.size();
+    }
+
+    @Override
+    public long getEstimatedBytes() {
+        return templates.getBytes();
+    }
+
+    @Override
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    @Override
+    public long getOffHeapBytes() {
+        return 0;
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.getCount();
+    }
+
+    // a modified template is revalidated in the background if parsed with the same configuration before
+    private boolean isRevalidated(final CachedTemplate cachedTemplate, final long lastModified, final Configuration configuration) {
+        final TemplateRevalidator revalidator = this.revalidator;
+        final boolean modified = cachedTemplate != null && lastModified > 0 && cachedTemplate.getTemplate().getConfiguration() == configuration;
+        return modified && !Objects.isNull(revalidator) && revalidator.isEnabled();
+    }
+
+    // the source is read in the rendering as its reader is not available afterwards
+    private void revalidate(final String name, final long lastModified, final Reader reader, final Configuration configuration, final CachedTemplate cachedTemplate) throws IOException {
+        if (!revalidator.isPending(name, lastModified)) {
+            final String source = read(reader);
+            revalidator.revalidate(name, lastModified, () -> {
+                final CachedTemplate parsedTemplate = parse(name, new StringReader(source), configuration, lastModified);
+                swap(cachedTemplate, parsedTemplate);
+                return parsedTemplate;
+            });
+        }
+    }
+
+    // swaps in the parsed template only if the cached template has not been replaced meanwhile
+    private void swap(final CachedTemplate cachedTemplate, final CachedTemplate parsedTemplate) {
+        if (isTooLarge(parsedTemplate)) {
+            templates.remove(cachedTemplate);
+        } else {
+            templates.replace(cachedTemplate, parsedTemplate);
+            evict(maxSize, maxBytes);
+        }
+    }
+
+    // a template parsed from the same source in the same folder with the same configuration is shared instead of
+    // parsing the source again
+    private CachedTemplate parse(final String name, final Reader reader, final Configuration configuration, final long lastModified) throws IOException {
+        final String source = read(reader);
+        final String key = name.substring(0, name.lastIndexOf('/') + 1).concat(digest(source));
+        Template template = sharedTemplate(key, configuration);
+        if (template != null) {
+            shares.mark();
+        } else {
+            template = new Template(name, new StringReader(source), configuration);
+            if (check) {
+                for (final TemplateFinding finding : TemplateAnalyzer.analyze(template)) {
+                    logger.warn("expensive pattern in template: {}", finding);
+                }
+            }
+            if (optimize) {
+                templateOptimizer.optimize(template);
+            }
+            sharedTemplates.put(key, new SharedTemplate(key, template, releasedTemplates));
+        }
+        return new CachedTemplate(name, template, lastModified, MemorySize.ofTemplate(source.length()), templates::staticTextAdded);
+    }
+
+    private Template sharedTemplate(final String key, final Configuration configuration) {
+        releaseTemplates();
+        final SharedTemplate sharedTemplate = sharedTemplates.get(key);
+        if (sharedTemplate != null) {
+            final Template template = sharedTemplate.get();
+            if (template != null && template.getConfiguration() == configuration) {
+                return template;
+            }
+        }
+        return null;
+    }
+
+    private void releaseTemplates() {
+        Reference<? extends Template> reference = releasedTemplates.poll();
+        while (reference != null) {
+            sharedTemplates.remove(((SharedTemplate) reference).key, reference);
+            reference = releasedTemplates.poll();
+        }
+    }
+
+    private static String digest(final String source) {
+        try {
+            final MessageDigest messageDigest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+            return Base64.getEncoder().encodeToString(messageDigest.digest(source.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String read(final Reader reader) throws IOException {
+        final StringBuilder source = new StringBuilder();
+        final char[] buffer = new char[BUFFER_SIZE];
+        int length = reader.read(buffer);
+        while (length != -1) {
+            source.append(buffer, 0, length);
+            length = reader.read(buffer);
+        }
+        return source.toString();
+    }
+
+    private static final class SharedTemplate extends WeakReference<Template> {
+
+        private final String key;
+
+        private SharedTemplate(final String key, final Template template, final ReferenceQueue<Template> queue) {
+            super(template, queue);
+            this.key = key;
+        }
+
+    }
+
+}
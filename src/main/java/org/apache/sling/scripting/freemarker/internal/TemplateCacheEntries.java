@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import freemarker.template.Template;
+
+/**
+ * The templates cached by a {@link TemplateCache} by script name together with their estimated heap bytes.
+ *
+ * <p>Templates are looked up without locking. The estimated bytes are updated when a template is added or removed and
+ * when a cached template adds pre-encoded static text, so they are not summed up again. A parsed template shared by
+ * several scripts is estimated once.
+ */
+final class TemplateCacheEntries {
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    // the number of cached scripts using each parsed template, guarded by this
+    private final Map<Template, Integer> users = new IdentityHashMap<>();
+
+    // guarded by this
+    private long bytes;
+
+    TemplateCacheEntries() { //
+    }
+
+    CachedTemplate get(final String name) {
+        final Entry entry = entries.get(name);
+        if (entry == null) {
+            return null;
+        }
+        return entry.cachedTemplate;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Adds a template, replacing the template cached for the same script.
+     *
+     * @param cachedTemplate the template to add
+     */
+    synchronized void put(final CachedTemplate cachedTemplate) {
+        remove(cachedTemplate.getName());
+        final Entry entry = new Entry(cachedTemplate, cachedTemplate.getWeight());
+        entries.put(cachedTemplate.getName(), entry);
+        bytes += entry.weight;
+        if (users.merge(cachedTemplate.getTemplate(), 1, Integer::sum) == 1) {
+            bytes += cachedTemplate.getTemplateWeight();
+        }
+    }
+
+    /**
+     * Replaces a cached template unless it has been replaced or removed meanwhile.
+     *
+     * @param cachedTemplate the cached template
+     * @param replacement    the template replacing it
+     */
+    synchronized void replace(final CachedTemplate cachedTemplate, final CachedTemplate replacement) {
+        if (remove(cachedTemplate)) {
+            put(replacement);
+        }
+    }
+
+    /**
+     * Removes the template cached for a script.
+     *
+     * @param name the name of the script
+     */
+    synchronized void remove(final String name) {
+        final Entry entry = entries.get(name);
+        if (entry != null) {
+            remove(entry.cachedTemplate);
+        }
+    }
+
+    /**
+     * Removes a cached template unless it has been replaced or removed meanwhile.
+     *
+     * @param cachedTemplate the cached template
+     * @return {@code true} if the template has been removed
+     */
+    synchronized boolean remove(final CachedTemplate cachedTemplate) {
+        final Entry entry = entries.get(cachedTemplate.getName());
+        final boolean removed = entry != null && entry.cachedTemplate == cachedTemplate;
+        if (removed) {
+            entries.remove(cachedTemplate.getName());
+            bytes -= entry.weight;
+            final Template template = cachedTemplate.getTemplate();
+            if (users.merge(template, -1, Integer::sum) == 0) {
+                users.remove(template);
+                bytes -= cachedTemplate.getTemplateWeight();
+            }
+        }
+        return removed;
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        users.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Adds the weight of static text pre-encoded by a template if it is cached.
+     *
+     * @param cachedTemplate the template
+     * @param weight         the estimated bytes of the pre-encoded static text
+     */
+    synchronized void staticTextAdded(final CachedTemplate cachedTemplate, final long weight) {
+        final Entry entry = entries.get(cachedTemplate.getName());
+        if (entry != null && entry.cachedTemplate == cachedTemplate) {
+            entry.weight += weight;
+            bytes += weight;
+        }
+    }
+
+    /**
+     * Returns the cached templates ordered by their last access, sorting a snapshot of the access times.
+     *
+     * @return the cached templates, least recently used first
+     */
+    List<CachedTemplate> leastRecentlyUsed() {
+        final List<Map.Entry<Long, CachedTemplate>> accesses = new ArrayList<>();
+        for (final Entry entry : entries.values()) {
+            accesses.add(new AbstractMap.SimpleImmutableEntry<>(entry.cachedTemplate.getLastAccess(), entry.cachedTemplate));
+        }
+        accesses.sort(Map.Entry.comparingByKey());
+        final List<CachedTemplate> cachedTemplates = new ArrayList<>(accesses.size());
+        for (final Map.Entry<Long, CachedTemplate> access : accesses) {
+            cachedTemplates.add(access.getValue());
+        }
+        return cachedTemplates;
+    }
+
+    private static final class Entry {
+
+        private final CachedTemplate cachedTemplate;
+
+        // the estimated bytes without the parsed template, guarded by the entries
+        private long weight;
+
+        private Entry(final CachedTemplate cachedTemplate, final long weight) {
+            this.cachedTemplate = cachedTemplate;
+            this.weight = weight;
+        }
+
+    }
+
+}
@@ -0,0 +1,353 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.management.DynamicMBean;
+
+import freemarker.template.Configuration;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.commons.metrics.MetricsService;
+import org.apache.sling.commons.osgi.PropertiesUtil;
+import org.apache.sling.scripting.api.resource.ScriptingResourceResolverProvider;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Template caches of the default and of tenant {@link Configuration}s.
+ *
+ * <p>A tenant {@link Configuration} is registered with the script path prefixes it applies to in the service property
+ * {@value #PATHS}, an optional name for its metrics in {@value #TENANT}, an optional maximum number of cached
+ * templates in {@value #CACHE_SIZE} and an optional maximum of estimated heap bytes of cached templates in
+ * {@value #CACHE_BYTES}, which defaults to the one of the default configuration. A script uses the tenant with the
+ * longest matching prefix, and of those the one with the highest service ranking.
+ *
+ * <p>Each template cache is registered as {@link CacheMBean} named {@code templates.<tenant>} and sheds templates
+ * under memory pressure.
+ */
+@Component(
+    service = TemplateCaches.class
+)
+public final class TemplateCaches {
+
+    /**
+     * Service property of tenant configurations with the script path prefixes.
+     */
+    public static final String PATHS = "sling.scripting.freemarker.paths";
+
+    /**
+     * Service property of tenant configurations with the tenant's name.
+     */
+    public static final String TENANT = "sling.scripting.freemarker.tenant";
+
+    /**
+     * Service property of tenant configurations with the maximum number of cached templates.
+     */
+    public static final String CACHE_SIZE = "sling.scripting.freemarker.cache.size";
+
+    /**
+     * Service property of tenant configurations with the maximum estimated heap bytes of cached templates.
+     */
+    public static final String CACHE_BYTES = "sling.scripting.freemarker.cache.bytes";
+
+    private static final String METRICS_PREFIX = "sling.scripting.freemarker.templates.";
+
+    private static final String MBEAN_PREFIX = "templates.";
+
+    private static final String DEFAULT_TENANT = "default";
+
+    private static final String SEPARATOR = "/";
+
+    @Reference
+    private MetricsService metricsService;
+
+    @Reference
+    private TemplateRevalidator templateRevalidator;
+
+    @Reference
+    private MemoryPressure memoryPressure;
+
+    @Reference
+    private ScriptingResourceResolverProvider scriptingResourceResolverProvider;
+
+    private final List<Tenant> tenants = new CopyOnWriteArrayList<>();
+
+    private final Map<TemplateCache, ServiceRegistration<DynamicMBean>> registrations = new ConcurrentHashMap<>();
+
+    private final Runnable reliever = this::shed;
+
+    private volatile BundleContext bundleContext;
+
+    private volatile TemplateCache defaultTemplateCache;
+
+    private volatile boolean optimize;
+
+    private volatile long defaultCacheBytes;
+
+    private volatile boolean check;
+
+    private final Logger logger = LoggerFactory.getLogger(TemplateCaches.class);
+
+    public TemplateCaches() { //
+    }
+
+    @Activate
+    @SuppressWarnings("unused")
+    private void activate(final BundleContext bundleContext) {
+        logger.debug("activate");
+        this.bundleContext = bundleContext;
+        memoryPressure.register(reliever);
+    }
+
+    @Deactivate
+    @SuppressWarnings("unused")
+    private void deactivate() {
+        logger.debug("deactivate");
+        memoryPressure.unregister(reliever);
+        for (final ServiceRegistration<DynamicMBean> registration : registrations.values()) {
+            CacheMBeans.unregister(registration);
+        }
+        registrations.clear();
+        bundleContext = null;
+    }
+
+    @Reference(
+        cardinality = ReferenceCardinality.MULTIPLE,
+        policy = ReferencePolicy.DYNAMIC,
+        target = "(" + PATHS + "=*)"
+    )
+    @SuppressWarnings("unused")
+    private void bindConfiguration(final Configuration configuration, final Map<String, Object> properties) {
+        final Tenant tenant = new Tenant(configuration, properties);
+        logger.debug("binding configuration of tenant {} for paths {}", tenant.name, tenant.paths);
+        tenants.add(tenant);
+    }
+
+    @SuppressWarnings("unused")
+    private void unbindConfiguration(final Configuration configuration) {
+        logger.debug("unbinding configuration {}", configuration);
+        for (final Tenant tenant : tenants) {
+            if (tenant.configuration == configuration) {
+                tenants.remove(tenant);
+                unregister(tenant.templateCache);
+            }
+        }
+    }
+
+    /**
+     * Configures the caches.
+     *
+     * @param optimize         whether parsed templates are optimized before they are cached
+     * @param defaultCacheSize  the maximum number of templates cached for the default configuration, {@code 0} for no limit
+     * @param defaultCacheBytes the maximum estimated heap bytes of templates cached for the default configuration and
+     *                          tenants without their own limit, {@code 0} for no limit
+     * @param check             whether parsed templates are checked for patterns expensive to render
+     */
+    void configure(final boolean optimize, final int defaultCacheSize, final long defaultCacheBytes, final boolean check) {
+        this.optimize = optimize;
+        this.check = check;
+        this.defaultCacheBytes = defaultCacheBytes;
+        defaultTemplateCache().configure(optimize, defaultCacheSize, defaultCacheBytes, check, templateRevalidator);
+        for (final Tenant tenant : tenants) {
+            tenant.configure();
+        }
+    }
+
+    /**
+     * Gets the tenant configuration for a script path.
+     *
+     * @param path the path of the script
+     * @return the tenant configuration or {@code null} if no tenant applies
+     */
+    @SuppressWarnings("checkstyle:AvoidInlineConditionals")
+    Configuration getConfiguration(final String path) {
+        final Tenant tenant = tenant(path);
+        return tenant == null ? null : tenant.configuration;
+    }
+
+    /**
+     * Gets the template cache for a script path.
+     *
+     * @param path the path of the script
+     * @return the tenant's template cache or the default one if no tenant applies
+     */
+    @SuppressWarnings("checkstyle:AvoidInlineConditionals")
+    TemplateCache getTemplateCache(final String path) {
+        final Tenant tenant = tenant(path);
+        return tenant == null ? defaultTemplateCache() : tenant.templateCache();
+    }
+
+    /**
+     * Gets a script resource with a readable modification time to validate cached templates with. A script resource
+     * resolved with the request's resource resolver is used as is if that resolver can read its modification time,
+     * otherwise the script is resolved with the request-scoped scripting resource resolver.
+     *
+     * @param scriptResource the script resource resolved with the request's resource resolver
+     * @return the script resource to validate cached templates with
+     */
+    @SuppressWarnings("checkstyle:AvoidInlineConditionals")
+    Resource scriptResource(final Resource scriptResource) {
+        if (scriptResource.getResourceMetadata().getModificationTime() > 0) {
+            return scriptResource;
+        }
+        final Resource resource = scriptingResourceResolverProvider.getRequestScopedResourceResolver().getResource(scriptResource.getPath());
+        return Objects.isNull(resource) ? scriptResource : resource;
+    }
+
+    private TemplateCache defaultTemplateCache() {
+        TemplateCache templateCache = defaultTemplateCache;
+        if (templateCache == null) {
+            synchronized (this) {
+                templateCache = defaultTemplateCache;
+                if (templateCache == null) {
+                    templateCache = newTemplateCache(DEFAULT_TENANT);
+                    templateCache.configure(optimize, 0, defaultCacheBytes, check, templateRevalidator);
+                    defaultTemplateCache = templateCache;
+                }
+            }
+        }
+        return templateCache;
+    }
+
+    private TemplateCache newTemplateCache(final String name) {
+        final TemplateCache templateCache = new TemplateCache(metricsService, METRICS_PREFIX.concat(name).concat("."));
+        final BundleContext bundleContext = this.bundleContext;
+        if (bundleContext != null) {
+            registrations.put(templateCache, CacheMBeans.register(bundleContext, MBEAN_PREFIX.concat(name), templateCache));
+        }
+        return templateCache;
+    }
+
+    private void unregister(final TemplateCache templateCache) {
+        if (templateCache != null) {
+            CacheMBeans.unregister(registrations.remove(templateCache));
+        }
+    }
+
+    private void shed() {
+        final TemplateCache templateCache = defaultTemplateCache;
+        if (templateCache != null) {
+            templateCache.shed();
+        }
+        for (final Tenant tenant : tenants) {
+            if (tenant.templateCache != null) {
+                tenant.templateCache.shed();
+            }
+        }
+    }
+
+    // the tenant with the longest matching prefix wins, ties are broken by service ranking
+    private Tenant tenant(final String path) {
+        Tenant selected = null;
+        int selectedLength = -1;
+        for (final Tenant tenant : tenants) {
+            final int length = tenant.match(path);
+            if (length > selectedLength || length >= 0 && length == selectedLength && tenant.ranking > selected.ranking) {
+                selected = tenant;
+                selectedLength = length;
+            }
+        }
+        return selected;
+    }
+
+    private final class Tenant {
+
+        private final Configuration configuration;
+
+        private final String[] paths;
+
+        private final String name;
+
+        private final int ranking;
+
+        private final int cacheSize;
+
+        private final long cacheBytes;
+
+        private volatile TemplateCache templateCache;
+
+        private Tenant(final Configuration configuration, final Map<String, Object> properties) {
+            this.configuration = configuration;
+            this.paths = PropertiesUtil.toStringArray(properties.get(PATHS), new String[0]);
+            this.name = PropertiesUtil.toString(properties.get(TENANT), String.valueOf(properties.get(Constants.SERVICE_ID)));
+            this.ranking = PropertiesUtil.toInteger(properties.get(Constants.SERVICE_RANKING), 0);
+            this.cacheSize = PropertiesUtil.toInteger(properties.get(CACHE_SIZE), 0);
+            this.cacheBytes = PropertiesUtil.toLong(properties.get(CACHE_BYTES), -1);
+        }
+
+        // the length of the longest prefix matching the path or -1 if none matches
+        @SuppressWarnings("checkstyle:AvoidInlineConditionals")
+        private int match(final String path) {
+            int length = -1;
+            for (final String prefix : paths) {
+                final String directory = prefix.endsWith(SEPARATOR) ? prefix : prefix.concat(SEPARATOR);
+                if (path.startsWith(directory) && directory.length() > length) {
+                    length = directory.length();
+                }
+            }
+            return length;
+        }
+
+        private TemplateCache templateCache() {
+            TemplateCache templateCache = this.templateCache;
+            if (templateCache == null) {
+                synchronized (this) {
+                    templateCache = this.templateCache;
+                    if (templateCache == null) {
+                        templateCache = newTemplateCache(name);
+                        templateCache.configure(optimize, cacheSize, cacheBytes(), check, templateRevalidator);
+                        this.templateCache = templateCache;
+                    }
+                }
+            }
+            return templateCache;
+        }
+
+        private void configure() {
+            final TemplateCache templateCache = this.templateCache;
+            if (templateCache != null) {
+                templateCache.configure(optimize, cacheSize, cacheBytes(), check, templateRevalidator);
+            }
+        }
+
+        // tenants without their own limit use the one of the default configuration
+        private long cacheBytes() {
+            if (cacheBytes < 0) {
+                return defaultCacheBytes;
+            }
+            return cacheBytes;
+        }
+
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.SlingConstants;
+import org.apache.sling.api.SlingHttpServletRequest;
+
+/**
+ * Selection of a single macro of a template to render instead of the whole template, e.g. for partial page updates.
+ *
+ * <p>A macro is selected with a selector {@code fragment-<macro>} or with the request attribute {@value #ATTRIBUTE}.
+ * The last selector wins over the attribute. Only the top-level rendering of a request renders a fragment, so included
+ * scripts inheriting the selectors are rendered completely, and only macros configured as fragments can be selected.
+ */
+final class TemplateFragments {
+
+    static final String ATTRIBUTE = "org.apache.sling.scripting.freemarker.fragment";
+
+    private static final String SELECTOR_PREFIX = "fragment-";
+
+    private TemplateFragments() { //
+    }
+
+    /**
+     * Returns the name of the macro selected for a rendering.
+     *
+     * @param request the current request, may be {@code null}
+     * @param macros  the names of the macros which can be selected
+     * @return the name of the selected macro or {@code null} if the whole template is rendered
+     */
+    static String select(final SlingHttpServletRequest request, final Set<String> macros) {
+        String fragment = null;
+        if (request != null && request.getAttribute(SlingConstants.ATTR_REQUEST_SERVLET) == null) {
+            if (request.getAttribute(ATTRIBUTE) instanceof String) {
+                fragment = StringUtils.trimToNull((String) request.getAttribute(ATTRIBUTE));
+            }
+            for (final String selector : request.getRequestPathInfo().getSelectors()) {
+                if (selector.startsWith(SELECTOR_PREFIX)) {
+                    fragment = StringUtils.trimToNull(selector.substring(SELECTOR_PREFIX.length()));
+                }
+            }
+        }
+        if (fragment != null && !macros.contains(fragment)) {
+            fragment = null;
+        }
+        return fragment;
+    }
+
+}
@@ -0,0 +1,258 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import freemarker.core.TextBlock;
+import freemarker.template.Template;
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateScalarModel;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Optimizes the tree of a parsed template once before it is cached and executed.
+ *
+ * <p>In elements rendering their children in sequence, comments are removed, interpolations of constant strings which
+ * are not escaped become static text and adjacent static text is merged into a single text block. Constant expressions
+ * are already folded by FreeMarker's parser.
+ *
+ * <p>FreeMarker's tree is not public API (its classes are deprecated for public use), so it is accessed reflectively
+ * and the bundle imports {@code freemarker.core} only from the FreeMarker version it has been built against. If the
+ * tree cannot be accessed, an error is logged and templates are left as parsed. The changes are collected before any
+ * of them is applied, and a template whose tree could only be changed partially is not used.
+ */
+@SuppressWarnings("deprecation")
+final class TemplateOptimizer {
+
+    private static final String CORE_PACKAGE = "freemarker.core.";
+
+    private static final String COMMENT = CORE_PACKAGE.concat("Comment");
+
+    private static final String DOLLAR_VARIABLE = CORE_PACKAGE.concat("DollarVariable");
+
+    private static final Set<String> SEQUENTIAL_ELEMENTS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+        "MixedContent", "IteratorBlock", "Items", "Sep", "ElseOfList", "ConditionalBlock", "Case", "Macro", "RecoveryBlock",
+        "EscapeBlock", "NoEscapeBlock", "AutoEscBlock", "NoAutoEscBlock", "OutputFormatBlock", "CompressedBlock",
+        "BlockAssignment", "UnifiedCall"
+    )));
+
+    private final Accessors accessors;
+
+    TemplateOptimizer() {
+        this.accessors = Accessors.lookup();
+    }
+
+    /**
+     * Optimizes a parsed template in place.
+     *
+     * @param template the parsed template
+     * @throws IOException if the template has been changed partially
+     */
+    void optimize(final Template template) throws IOException {
+        final Map<freemarker.core.TemplateElement, List<freemarker.core.TemplateElement>> changes = changes(template);
+        try {
+            for (final Map.Entry<freemarker.core.TemplateElement, List<freemarker.core.TemplateElement>> change : changes.entrySet()) {
+                accessors.setChildren(change.getKey(), change.getValue());
+            }
+        } catch (IllegalAccessException e) {
+            LoggerFactory.getLogger(TemplateOptimizer.class).error("optimizing template {} failed, its tree has been changed partially", template.getName(), e);
+            throw new IOException(String.format("optimizing template %s failed", template.getName()), e);
+        }
+    }
+
+    // the optimized children by element, empty if the tree cannot be accessed
+    private Map<freemarker.core.TemplateElement, List<freemarker.core.TemplateElement>> changes(final Template template) {
+        final Map<freemarker.core.TemplateElement, List<freemarker.core.TemplateElement>> changes = new IdentityHashMap<>();
+        if (!Objects.isNull(accessors)) {
+            try {
+                collect(template.getRootTreeNode(), template, changes);
+            } catch (ReflectiveOperationException | TemplateModelException e) {
+                LoggerFactory.getLogger(TemplateOptimizer.class).error("optimizing template {} failed, leaving it as parsed", template.getName(), e);
+                changes.clear();
+            }
+        }
+        return changes;
+    }
+
+    // collects the optimized children of the elements, changing nothing yet
+    private void collect(final freemarker.core.TemplateElement element, final Template template, final Map<freemarker.core.TemplateElement, List<freemarker.core.TemplateElement>> changes) throws ReflectiveOperationException, TemplateModelException {
+        for (int i = 0; i < element.getChildCount(); i++) {
+            collect((freemarker.core.TemplateElement) element.getChildAt(i), template, changes);
+        }
+        if (element.getChildCount() > 0 && SEQUENTIAL_ELEMENTS.contains(element.getClass().getName().substring(CORE_PACKAGE.length()))) {
+            final List<freemarker.core.TemplateElement> children = optimizeChildren(element, template);
+            if (!children.isEmpty() && isChanged(element, children)) {
+                changes.put(element, children);
+            }
+        }
+    }
+
+    private static boolean isChanged(final freemarker.core.TemplateElement element, final List<freemarker.core.TemplateElement> children) {
+        boolean changed = children.size() != element.getChildCount();
+        for (int i = 0; i < children.size() && !changed; i++) {
+            changed = children.get(i) != element.getChildAt(i);
+        }
+        return changed;
+    }
+
+    // merges runs of static text, constant interpolations and comments into single text blocks
+    private List<freemarker.core.TemplateElement> optimizeChildren(final freemarker.core.TemplateElement element, final Template template) throws ReflectiveOperationException, TemplateModelException {
+        final List<freemarker.core.TemplateElement> children = new ArrayList<>();
+        final List<freemarker.core.TemplateElement> run = new ArrayList<>();
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < element.getChildCount(); i++) {
+            final freemarker.core.TemplateElement child = (freemarker.core.TemplateElement) element.getChildAt(i);
+            final String childText = text(child);
+            if (Objects.isNull(childText)) {
+                addRun(children, run, text, template);
+                children.add(child);
+            } else {
+                run.add(child);
+                text.append(childText);
+            }
+        }
+        addRun(children, run, text, template);
+        return children;
+    }
+
+    private void addRun(final List<freemarker.core.TemplateElement> children, final List<freemarker.core.TemplateElement> run, final StringBuilder text, final Template template) throws ReflectiveOperationException {
+        if (run.size() == 1 && run.get(0) instanceof TextBlock) {
+            children.add(run.get(0));
+        } else if (text.length() > 0) {
+            final freemarker.core.TemplateElement first = run.get(0);
+            final freemarker.core.TemplateElement last = run.get(run.size() - 1);
+            final TextBlock textBlock = new TextBlock(text.toString());
+            accessors.setLocation(textBlock, template, first.getBeginColumn(), first.getBeginLine(), last.getEndColumn(), last.getEndLine());
+            children.add(textBlock);
+        }
+        run.clear();
+        text.setLength(0);
+    }
+
+    // returns the static output of an element or null if the element is not static
+    private String text(final freemarker.core.TemplateElement element) throws ReflectiveOperationException, TemplateModelException {
+        final String type = element.getClass().getName();
+        final String text;
+        if (element instanceof TextBlock) {
+            text = accessors.text((TextBlock) element);
+        } else if (type.equals(COMMENT)) {
+            text = "";
+        } else if (type.equals(DOLLAR_VARIABLE)) {
+            text = accessors.constantText(element);
+        } else {
+            text = null;
+        }
+        return text;
+    }
+
+    private static final class Accessors {
+
+        private final Field childBuffer;
+
+        private final Field childCount;
+
+        private final Field index;
+
+        private final Field parent;
+
+        private final Field text;
+
+        private final Field expression;
+
+        private final Field escapedExpression;
+
+        private final Field autoEscape;
+
+        private final Field constantValue;
+
+        private final Method setLocation;
+
+        Accessors() throws ReflectiveOperationException {
+            childBuffer = field(freemarker.core.TemplateElement.class, "childBuffer");
+            childCount = field(freemarker.core.TemplateElement.class, "childCount");
+            index = field(freemarker.core.TemplateElement.class, "index");
+            parent = field(freemarker.core.TemplateElement.class, "parent");
+            text = field(TextBlock.class, "text");
+            final Class<?> dollarVariable = Class.forName(DOLLAR_VARIABLE);
+            expression = field(dollarVariable, "expression");
+            escapedExpression = field(dollarVariable, "escapedExpression");
+            autoEscape = field(dollarVariable, "autoEscape");
+            constantValue = field(Class.forName(CORE_PACKAGE.concat("Expression")), "constantValue");
+            setLocation = Class.forName(CORE_PACKAGE.concat("TemplateObject")).getDeclaredMethod("setLocation", Template.class, int.class, int.class, int.class, int.class);
+            setLocation.setAccessible(true);
+        }
+
+        @SuppressWarnings("checkstyle:IllegalCatch")
+        static Accessors lookup() {
+            try {
+                return new Accessors();
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                LoggerFactory.getLogger(TemplateOptimizer.class).error("accessing FreeMarker's template tree failed, templates are not optimized", e);
+                return null;
+            }
+        }
+
+        private static Field field(final Class<?> clazz, final String name) throws NoSuchFieldException {
+            final Field field = clazz.getDeclaredField(name);
+            field.setAccessible(true);
+            return field;
+        }
+
+        String text(final TextBlock textBlock) throws IllegalAccessException {
+            return new String((char[]) text.get(textBlock));
+        }
+
+        // constant strings interpolated without escaping are static output, other constants depend on formatting settings
+        String constantText(final freemarker.core.TemplateElement dollarVariable) throws ReflectiveOperationException, TemplateModelException {
+            final Object value = constantValue.get(expression.get(dollarVariable));
+            final boolean escaped = expression.get(dollarVariable) != escapedExpression.get(dollarVariable) || autoEscape.getBoolean(dollarVariable);
+            if (escaped || !(value instanceof TemplateScalarModel)) {
+                return null;
+            }
+            return ((TemplateScalarModel) value).getAsString();
+        }
+
+        void setLocation(final freemarker.core.TemplateElement element, final Template template, final int beginColumn, final int beginLine, final int endColumn, final int endLine) throws ReflectiveOperationException {
+            setLocation.invoke(element, template, beginColumn, beginLine, endColumn, endLine);
+        }
+
+        void setChildren(final freemarker.core.TemplateElement element, final List<freemarker.core.TemplateElement> children) throws IllegalAccessException {
+            for (int i = 0; i < children.size(); i++) {
+                index.setInt(children.get(i), i);
+                parent.set(children.get(i), element);
+            }
+            childBuffer.set(element, children.toArray(new freemarker.core.TemplateElement[0]));
+            childCount.setInt(element, children.size());
+        }
+
+    }
+
+}
@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.metatype.annotations.Designate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Aggregates the time spent per FreeMarker instruction stack across renderings.
+ *
+ * <p>The profile is written in collapsed stack format (one {@code script;outermost;...;innermost microseconds} line per
+ * stack) as consumed by flame graph tools when profiling gets disabled.
+ *
+ * <p>Only a random sample of the writes is profiled, with the time of a sampled write weighted by the sampling
+ * interval, so the profile estimates the time per stack without describing the instruction stack on every write.
+ */
+@Component(
+    service = TemplateProfiler.class
+)
+@Designate(
+    ocd = TemplateProfilerConfiguration.class
+)
+public final class TemplateProfiler {
+
+    private static final String FILE_NAME = "template-profile.collapsed";
+
+    private static final Pattern LOCATION = Pattern.compile("(?<instruction>.*?)\\s+\\[in template \"(?<template>.*?)\"(?: in \\w+ \".*?\")? at line (?<line>\\d+), column (?<column>\\d+)]");
+
+    private final Map<String, LongAdder> stacks = new ConcurrentHashMap<>();
+
+    private volatile boolean enabled;
+
+    private volatile int maxStacks;
+
+    private volatile int samplingInterval;
+
+    private BundleContext bundleContext;
+
+    private final Logger logger = LoggerFactory.getLogger(TemplateProfiler.class);
+
+    public TemplateProfiler() { //
+    }
+
+    @Activate
+    @SuppressWarnings("unused")
+    private void activate(final TemplateProfilerConfiguration configuration, final BundleContext bundleContext) {
+        logger.debug("activate");
+        this.bundleContext = bundleContext;
+        configure(configuration);
+    }
+
+    @Modified
+    @SuppressWarnings("unused")
+    private void modified(final TemplateProfilerConfiguration configuration) {
+        logger.debug("modified");
+        configure(configuration);
+    }
+
+    @Deactivate
+    @SuppressWarnings("unused")
+    private void deactivate() {
+        logger.debug("deactivate");
+        if (enabled) {
+            enabled = false;
+            export();
+        }
+        bundleContext = null;
+    }
+
+    private void configure(final TemplateProfilerConfiguration configuration) {
+        maxStacks = configuration.maxStacks();
+        samplingInterval = Math.max(1, configuration.samplingInterval());
+        final boolean wasEnabled = enabled;
+        if (configuration.enabled() && !wasEnabled) {
+            stacks.clear();
+        }
+        enabled = configuration.enabled();
+        if (wasEnabled && !enabled) {
+            export();
+        }
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Decides whether a write is profiled.
+     *
+     * @return {@code true} for one in {@code samplingInterval} writes on average
+     */
+    boolean isSampled() {
+        final int interval = samplingInterval;
+        return interval <= 1 || ThreadLocalRandom.current().nextInt(interval) == 0;
+    }
+
+    /**
+     * Adds time spent in an instruction stack for a sampled write, weighted by the sampling interval.
+     *
+     * @param script the path of the rendered script
+     * @param stack  the instruction stack as written by {@link freemarker.core.Environment#outputInstructionStack(java.io.PrintWriter)}
+     * @param time   the time in nanoseconds
+     */
+    void addTime(final String script, final String stack, final long time) {
+        final String key = script + '\n' + stack;
+        final long weighted = time * samplingInterval;
+        final LongAdder adder = stacks.get(key);
+        if (adder != null) {
+            adder.add(weighted);
+        } else if (stacks.size() < maxStacks) {
+            stacks.computeIfAbsent(key, k -> new LongAdder()).add(weighted);
+        }
+    }
+
+    /**
+     * Writes the profile in collapsed stack format with times in microseconds.
+     *
+     * @param writer the writer to write the profile to
+     * @throws IOException if writing fails
+     */
+    void export(final Writer writer) throws IOException {
+        for (final Map.Entry<String, LongAdder> entry : stacks.entrySet()) {
+            final long time = TimeUnit.NANOSECONDS.toMicros(entry.getValue().sum());
+            if (time > 0) {
+                writer.write(collapse(entry.getKey()));
+                writer.write(' ');
+                writer.write(Long.toString(time));
+                writer.write('\n');
+            }
+        }
+    }
+
+    private void export() {
+        final File file = bundleContext.getDataFile(FILE_NAME);
+        if (file != null) {
+            try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+                export(writer);
+                logger.info("template profile written to {}", file);
+            } catch (IOException e) {
+                logger.error("writing template profile failed", e);
+            }
+        } else {
+            logger.warn("writing template profile failed, no file system support");
+        }
+    }
+
+    // script first, then the instructions from outermost to innermost
+    private static String collapse(final String key) {
+        final String[] lines = StringUtils.split(key, "\r\n");
+        final StringBuilder builder = new StringBuilder(frame(lines[0]));
+        for (int i = lines.length - 1; i > 0; i--) {
+            builder.append(';').append(frame(StringUtils.substringAfter(lines[i], ": ")));
+        }
+        return builder.toString();
+    }
+
+    @SuppressWarnings("checkstyle:AvoidInlineConditionals")
+    private static String frame(final String instruction) {
+        final Matcher matcher = LOCATION.matcher(instruction.trim());
+        final String frame = matcher.matches() ? String.format("%s (%s:%s:%s)", matcher.group("instruction"), matcher.group("template"), matcher.group("line"), matcher.group("column")) : instruction.trim();
+        return frame.replace(';', ',');
+    }
+
+}
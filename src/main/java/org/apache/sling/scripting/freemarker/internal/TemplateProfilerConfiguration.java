@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+@ObjectClassDefinition(
+    name = "Apache Sling Scripting FreeMarker Template Profiler",
+    description = "Profiles the time spent per FreeMarker instruction and writes it as collapsed stacks for flame graphs"
+)
+@interface TemplateProfilerConfiguration {
+
+    @AttributeDefinition(
+        name = "enabled",
+        description = "profile renderings, enabling discards the previous profile and disabling writes the profile to template-profile.collapsed in the bundle's data area"
+    )
+    boolean enabled() default false;
+
+    @AttributeDefinition(
+        name = "max stacks",
+        description = "maximum number of distinct instruction stacks to profile"
+    )
+    int maxStacks() default 10000;
+
+    @AttributeDefinition(
+        name = "sampling interval",
+        description = "profile one in this many writes on average, weighting its time accordingly, as describing the instruction stack of each write is expensive, 1 profiles every write"
+    )
+    int samplingInterval() default 16;
+
+}
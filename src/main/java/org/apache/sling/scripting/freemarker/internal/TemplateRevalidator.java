@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.sling.commons.metrics.Counter;
+import org.apache.sling.commons.metrics.Meter;
+import org.apache.sling.commons.metrics.MetricsService;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.Designate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parses changed templates on a background thread.
+ *
+ * <p>While a changed template is parsed, renderings keep using its last successfully parsed version. A version which
+ * fails to parse is reported through the log and metrics and not parsed again until the template changes again.
+ */
+@Component(
+    service = TemplateRevalidator.class
+)
+@Designate(
+    ocd = TemplateRevalidatorConfiguration.class
+)
+public final class TemplateRevalidator {
+
+    private static final String METRICS_PREFIX = "sling.scripting.freemarker.template.";
+
+    private static final String THREAD_NAME = "Apache Sling Scripting FreeMarker Template Revalidator";
+
+    @Reference
+    private MetricsService metricsService;
+
+    // versions of templates being parsed or failed to parse by template name
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+
+    private final Set<String> failingTemplates = ConcurrentHashMap.newKeySet();
+
+    private ExecutorService executorService;
+
+    private volatile boolean enabled;
+
+    private Meter revalidations;
+
+    private Meter failures;
+
+    private Counter failing;
+
+    private final Logger logger = LoggerFactory.getLogger(TemplateRevalidator.class);
+
+    public TemplateRevalidator() { //
+    }
+
+    @Activate
+    @SuppressWarnings("unused")
+    private void activate(final TemplateRevalidatorConfiguration configuration) {
+        logger.debug("activate");
+        revalidations = metricsService.meter(METRICS_PREFIX.concat("revalidations"));
+        failures = metricsService.meter(METRICS_PREFIX.concat("parse.failures"));
+        failing = metricsService.counter(METRICS_PREFIX.concat("failing"));
+        executorService = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+        configure(configuration);
+    }
+
+    @Modified
+    @SuppressWarnings("unused")
+    private void modified(final TemplateRevalidatorConfiguration configuration) {
+        logger.debug("modified");
+        configure(configuration);
+    }
+
+    @Deactivate
+    @SuppressWarnings("unused")
+    private void deactivate() {
+        logger.debug("deactivate");
+        enabled = false;
+        executorService.shutdownNow();
+        versions.clear();
+        failingTemplates.clear();
+    }
+
+    private void configure(final TemplateRevalidatorConfiguration configuration) {
+        enabled = configuration.enabled();
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Checks whether a version of a template is being parsed or failed to parse.
+     *
+     * @param name         the name of the template
+     * @param lastModified the modification time of the template's version
+     * @return {@code true} if the version is being parsed or failed to parse, {@code false} otherwise
+     */
+    boolean isPending(final String name, final long lastModified) {
+        return Objects.equals(versions.get(name), lastModified);
+    }
+
+    /**
+     * Parses a version of a template in the background unless it is being parsed or failed to parse already.
+     *
+     * @param name         the name of the template
+     * @param lastModified the modification time of the template's version
+     * @param parse        the parsing of the template, swapping in the parsed template
+     */
+    void revalidate(final String name, final long lastModified, final Callable<?> parse) {
+        final Long previous = versions.put(name, lastModified);
+        if (Objects.equals(previous, lastModified)) {
+            return;
+        }
+        try {
+            executorService.execute(() -> parse(name, lastModified, parse));
+        } catch (RejectedExecutionException e) {
+            versions.remove(name, lastModified);
+            logger.debug("revalidating {} rejected", name, e);
+        }
+    }
+
+    @SuppressWarnings("checkstyle:IllegalCatch")
+    private void parse(final String name, final long lastModified, final Callable<?> parse) {
+        try {
+            parse.call();
+            revalidations.mark();
+            versions.remove(name, lastModified);
+            if (failingTemplates.remove(name)) {
+                failing.decrement();
+            }
+            logger.debug("revalidated {}", name);
+        } catch (Exception e) {
+            failures.mark();
+            if (failingTemplates.add(name)) {
+                failing.increment();
+            }
+            logger.error("parsing changed template {} failed, keeping its last successfully parsed version", name, e);
+        }
+    }
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the bytes allocated by the current thread.
+ *
+ * <p>The counter is provided by {@code com.sun.management.ThreadMXBean}, which is not available on all JVMs and not
+ * necessarily visible to bundles, so it is invoked reflectively through the interface implemented by the platform's
+ * thread MXBean.
+ */
+final class ThreadAllocations {
+
+    private static final String THREAD_MX_BEAN = "com.sun.management.ThreadMXBean";
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private static final Method ALLOCATED_BYTES = allocatedBytesMethod();
+
+    private ThreadAllocations() { //
+    }
+
+    @SuppressWarnings("checkstyle:IllegalCatch")
+    private static Method allocatedBytesMethod() {
+        for (final Class<?> type : THREADS.getClass().getInterfaces()) {
+            if (THREAD_MX_BEAN.equals(type.getName())) {
+                try {
+                    return type.getMethod("getThreadAllocatedBytes", long.class);
+                } catch (NoSuchMethodException | RuntimeException e) {
+                    LoggerFactory.getLogger(ThreadAllocations.class).warn("thread allocation counter not accessible", e);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the bytes allocated by the current thread so far.
+     *
+     * @return the number of bytes or {@code 0} if thread allocations cannot be measured
+     */
+    static long current() {
+        long allocated = 0;
+        if (ALLOCATED_BYTES != null) {
+            try {
+                allocated = (Long) ALLOCATED_BYTES.invoke(THREADS, Thread.currentThread().getId());
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                LoggerFactory.getLogger(ThreadAllocations.class).debug("reading thread allocation counter failed", e);
+            }
+        }
+        return allocated;
+    }
+
+}
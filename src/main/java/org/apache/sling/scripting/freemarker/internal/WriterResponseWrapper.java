@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.internal;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+
+import javax.servlet.ServletOutputStream;
+
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.wrappers.SlingHttpServletResponseWrapper;
+
+/**
+ * Response wrapper writing character output directly to a writer, e.g. the output of the including template.
+ */
+final class WriterResponseWrapper extends SlingHttpServletResponseWrapper {
+
+    private final PrintWriter printWriter;
+
+    WriterResponseWrapper(final SlingHttpServletResponse response, final Writer writer) {
+        super(response);
+        printWriter = new PrintWriter(writer);
+    }
+
+    /**
+     * Checks whether writing the output failed.
+     *
+     * @return {@code true} if writing the output failed, {@code false} otherwise
+     */
+    boolean checkError() {
+        return printWriter.checkError();
+    }
+
+    @Override
+    public PrintWriter getWriter() {
+        return printWriter;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() {
+        throw new IllegalStateException("binary output is not supported");
+    }
+
+    @Override
+    public void flushBuffer() {
+        printWriter.flush();
+    }
+
+    @Override
+    public void resetBuffer() {
+        throw new IllegalStateException("output is already written");
+    }
+
+    @Override
+    public void reset() {
+        resetBuffer();
+    }
+
+}
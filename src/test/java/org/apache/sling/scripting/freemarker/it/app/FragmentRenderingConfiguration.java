@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.it.app;
+
+import java.nio.charset.StandardCharsets;
+
+import freemarker.cache.StringTemplateLoader;
+import freemarker.template.Configuration;
+import org.osgi.service.component.annotations.Component;
+
+@Component(
+    service = Configuration.class,
+    property = {
+        "sling.scripting.freemarker.paths=/apps/freemarker/page/fragment",
+        "sling.scripting.freemarker.tenant=fragment"
+    }
+)
+public class FragmentRenderingConfiguration extends Configuration {
+
+    public FragmentRenderingConfiguration() {
+        super(Configuration.getVersion());
+        setDefaultEncoding(StandardCharsets.UTF_8.name());
+        final StringTemplateLoader templateLoader = new StringTemplateLoader();
+        templateLoader.putTemplate("greeting.ftl", "<#macro hello>hello</#macro>");
+        setTemplateLoader(templateLoader);
+    }
+
+}
@@ -48,7 +48,7 @@ public class AdaptToModelIT extends FreemarkerTestSupport {
     private Document document;
 
     @Inject
-    @Filter(value = "(path=/apps/freemarker/page/adaptto/html.ftl)")
+    @Filter(value = "(path=/apps/freemarker/page/adaptto/html.ftl)", timeout = 300000)
     private ResourcePresence resourcePresence;
 
     @Configuration
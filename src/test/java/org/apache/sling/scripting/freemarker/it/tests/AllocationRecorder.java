@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.it.tests;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+
+/**
+ * Sling request filter recording the bytes allocated per step of FreeMarker renderings.
+ *
+ * <p>The allocations are traced by the script engine in the request progress tracker when allocation tracing is
+ * enabled, e.g. {@code render /apps/a/html.ftl} for evaluating a script, {@code render /apps/a/html.ftl > template
+ * models} for collecting its template models and {@code render /apps/a/html.ftl > include /content/b} for an include.
+ */
+class AllocationRecorder implements Filter {
+
+    private static final Pattern ALLOCATION = Pattern.compile("FreeMarker ([^,}]+).*, allocated (\\d+) bytes");
+
+    private final Map<String, List<Long>> allocations = new ConcurrentHashMap<>();
+
+    @Override
+    public void init(final FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void doFilter(final ServletRequest request, final ServletResponse response, final FilterChain chain) throws IOException, ServletException {
+        chain.doFilter(request, response);
+        final Iterator<String> messages = ((SlingHttpServletRequest) request).getRequestProgressTracker().getMessages();
+        while (messages.hasNext()) {
+            final Matcher matcher = ALLOCATION.matcher(messages.next());
+            if (matcher.find()) {
+                allocations.computeIfAbsent(matcher.group(1), k -> Collections.synchronizedList(new ArrayList<>())).add(Long.parseLong(matcher.group(2)));
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    void reset() {
+        allocations.clear();
+    }
+
+    /**
+     * Returns the median of the bytes allocated per rendering in the given step.
+     */
+    long median(final String step) {
+        final List<Long> values = new ArrayList<>(allocations.getOrDefault(step, Collections.emptyList()));
+        if (values.isEmpty()) {
+            throw new IllegalStateException(String.format("no allocations recorded for %s, recorded %s", step, allocations.keySet()));
+        }
+        Collections.sort(values);
+        return values.get(values.size() / 2);
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.it.tests;
+
+import java.io.IOException;
+import java.util.Collection;
+
+import javax.inject.Inject;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+
+import org.apache.sling.resource.presence.ResourcePresence;
+import org.jsoup.Jsoup;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.ops4j.pax.exam.Configuration;
+import org.ops4j.pax.exam.Option;
+import org.ops4j.pax.exam.junit.PaxExam;
+import org.ops4j.pax.exam.spi.reactors.ExamReactorStrategy;
+import org.ops4j.pax.exam.spi.reactors.PerClass;
+import org.ops4j.pax.exam.util.Filter;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceReference;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.ops4j.pax.exam.CoreOptions.options;
+import static org.ops4j.pax.exam.cm.ConfigurationAdminOptions.factoryConfiguration;
+import static org.ops4j.pax.exam.cm.ConfigurationAdminOptions.newConfiguration;
+
+@RunWith(PaxExam.class)
+@ExamReactorStrategy(PerClass.class)
+public class CacheMemoryIT extends FreemarkerTestSupport {
+
+    @Inject
+    private BundleContext bundleContext;
+
+    @Inject
+    @Filter(value = "(path=/apps/freemarker/page/cache/html.ftl)", timeout = 300000)
+    private ResourcePresence resourcePresence;
+
+    @Configuration
+    public Option[] configuration() {
+        return options(
+            baseConfiguration(),
+            newConfiguration("org.apache.sling.scripting.freemarker.internal.FreemarkerScriptEngineFactory")
+                .put("templateCacheMaxBytes", 1L)
+                .asOption(),
+            newConfiguration("org.apache.sling.scripting.freemarker.internal.FragmentCache")
+                .put("offHeapThreshold", 1)
+                .asOption(),
+            factoryConfiguration("org.apache.sling.resource.presence.internal.ResourcePresenter")
+                .put("path", "/apps/freemarker/page/cache/html.ftl")
+                .asOption()
+        );
+    }
+
+    @Test
+    public void testTemplatesLargerThanMaxBytesNotCached() throws IOException, InvalidSyntaxException, JMException {
+        render();
+        final DynamicMBean templates = cacheMBean("templates.default");
+        assertThat(templates.getAttribute("MaxBytes"), is(1L));
+        assertThat(templates.getAttribute("Entries"), is(0));
+        assertThat(templates.getAttribute("EstimatedBytes"), is(0L));
+        assertThat(templates.getAttribute("Evictions"), is(0L));
+    }
+
+    @Test
+    public void testFragmentsStoredOffHeap() throws IOException, InvalidSyntaxException, JMException {
+        final String cached = render();
+        assertThat(render(), is(cached));
+        final DynamicMBean fragments = cacheMBean("fragments");
+        assertThat((Integer) fragments.getAttribute("Entries"), greaterThan(0));
+        assertThat((Long) fragments.getAttribute("EstimatedBytes"), greaterThan(0L));
+        assertThat((Long) fragments.getAttribute("OffHeapBytes"), greaterThan(0L));
+    }
+
+    private DynamicMBean cacheMBean(final String name) throws InvalidSyntaxException {
+        final String filter = String.format("(jmx.objectname=org.apache.sling.scripting.freemarker:type=Cache,name=%s)", name);
+        final Collection<ServiceReference<DynamicMBean>> references = bundleContext.getServiceReferences(DynamicMBean.class, filter);
+        assertThat(references, hasSize(1));
+        return bundleContext.getService(references.iterator().next());
+    }
+
+    private String render() throws IOException {
+        final String url = String.format("http://localhost:%s/freemarker/cache.html", httpPort());
+        return Jsoup.connect(url).get().getElementById("cached").text();
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.it.tests;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.inject.Inject;
+import javax.script.ScriptEngineFactory;
+
+import org.apache.sling.resource.presence.ResourcePresence;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.ops4j.pax.exam.Configuration;
+import org.ops4j.pax.exam.Option;
+import org.ops4j.pax.exam.junit.PaxExam;
+import org.ops4j.pax.exam.spi.reactors.ExamReactorStrategy;
+import org.ops4j.pax.exam.spi.reactors.PerClass;
+import org.ops4j.pax.exam.util.Filter;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.ops4j.pax.exam.CoreOptions.options;
+import static org.ops4j.pax.exam.cm.ConfigurationAdminOptions.factoryConfiguration;
+
+@RunWith(PaxExam.class)
+@ExamReactorStrategy(PerClass.class)
+public class DeferredIncludeIT extends FreemarkerTestSupport {
+
+    private Document document;
+
+    @Inject
+    @Filter(value = "(names=jsp)", timeout = 300000)
+    protected ScriptEngineFactory scriptEngineFactory;
+
+    @Inject
+    @Filter(value = "(path=/apps/freemarker/page/deferred/html.ftl)", timeout = 300000)
+    private ResourcePresence resourcePresence;
+
+    @Configuration
+    public Option[] configuration() {
+        return options(
+            baseConfiguration(),
+            factoryConfiguration("org.apache.sling.resource.presence.internal.ResourcePresenter")
+                .put("path", "/apps/freemarker/page/deferred/html.ftl")
+                .asOption()
+        );
+    }
+
+    @Before
+    public void setup() throws IOException {
+        final String url = String.format("http://localhost:%s/freemarker/deferred.html", httpPort());
+        document = Jsoup.connect(url).get();
+    }
+
+    @Test
+    public void testDeferredIncludePlaceholder() {
+        final Element element = document.getElementById("deferred");
+        assertThat(element.text(), is(""));
+        assertThat(element.getElementById("sling-deferred-1").tagName(), is("template"));
+    }
+
+    @Test
+    public void testDeferredIncludeContent() {
+        final Element element = document.getElementById("sling-deferred-content-1");
+        assertThat(element.text(), is("/content/includes/foo"));
+        assertThat(element.nextElementSibling().data(), is("slingDeferredSwap(1)"));
+    }
+
+    @Test
+    public void testDeferredIncludeInCacheRenderedInPlace() throws IOException {
+        final String url = String.format("http://localhost:%s/freemarker/deferred.html", httpPort());
+        // the first rendering of the page renders the cached fragment, later ones write it from the cache
+        for (final Document rendering : Arrays.asList(document, Jsoup.connect(url).get())) {
+            final Element element = rendering.getElementById("cached");
+            assertThat(element.text(), is("/content/includes/bar"));
+            assertThat(rendering.getElementById("sling-deferred-2"), nullValue());
+        }
+    }
+
+    @Test
+    public void testInlineInclude() {
+        final Element element = document.getElementById("inline");
+        assertThat(element.text(), is("/content/includes/bar"));
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.it.tests;
+
+import java.io.IOException;
+
+import javax.inject.Inject;
+
+import org.apache.sling.resource.presence.ResourcePresence;
+import org.apache.sling.scripting.freemarker.it.app.FragmentRenderingConfiguration;
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.ops4j.pax.exam.Configuration;
+import org.ops4j.pax.exam.Option;
+import org.ops4j.pax.exam.junit.PaxExam;
+import org.ops4j.pax.exam.spi.reactors.ExamReactorStrategy;
+import org.ops4j.pax.exam.spi.reactors.PerClass;
+import org.ops4j.pax.exam.util.Filter;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.ops4j.pax.exam.CoreOptions.options;
+import static org.ops4j.pax.exam.cm.ConfigurationAdminOptions.factoryConfiguration;
+import static org.ops4j.pax.exam.cm.ConfigurationAdminOptions.newConfiguration;
+
+@RunWith(PaxExam.class)
+@ExamReactorStrategy(PerClass.class)
+public class FragmentRenderingIT extends FreemarkerTestSupport {
+
+    @Inject
+    @Filter(value = "(path=/apps/freemarker/page/fragment/html.ftl)", timeout = 300000)
+    private ResourcePresence resourcePresence;
+
+    @Inject
+    @Filter("(sling.scripting.freemarker.tenant=fragment)")
+    private freemarker.template.Configuration configuration;
+
+    @Configuration
+    public Option[] configuration() {
+        return options(
+            baseConfiguration(),
+            buildBundleWithBnd(
+                FragmentRenderingConfiguration.class
+            ),
+            newConfiguration("org.apache.sling.scripting.freemarker.internal.FreemarkerScriptEngineFactory")
+                .put("fragmentRendering", true)
+                .put("fragmentMacros", new String[]{"items", "missing"})
+                .asOption(),
+            factoryConfiguration("org.apache.sling.resource.presence.internal.ResourcePresenter")
+                .put("path", "/apps/freemarker/page/fragment/html.ftl")
+                .asOption()
+        );
+    }
+
+    private Connection connect(final String selectors) throws IOException {
+        final String url = String.format("http://localhost:%s/freemarker/fragment%s.html", httpPort(), selectors);
+        return Jsoup.connect(url);
+    }
+
+    @Test
+    public void testTemplate() throws IOException {
+        final Document document = connect("").get();
+        assertThat(document.title(), is("Sling Fragment"));
+        assertThat(document.getElementById("heading").text(), is("Sling Fragment"));
+        assertThat(document.select("#items li").eachText(), contains("foo", "bar"));
+        assertThat(document.getElementById("greeting").text(), is("hello"));
+    }
+
+    @Test
+    public void testFragment() throws IOException {
+        final Document document = connect(".fragment-items").get();
+        assertThat(document.title(), is(""));
+        assertThat(document.getElementById("heading"), nullValue());
+        assertThat(document.select("#items li").eachText(), contains("foo", "bar"));
+        assertThat(document.getElementById("greeting").text(), is("hello"));
+    }
+
+    @Test
+    public void testFragmentNotConfigured() throws IOException {
+        final Document document = connect(".fragment-title").get();
+        assertThat(document.title(), is("Sling Fragment"));
+        assertThat(document.getElementById("heading").text(), is("Sling Fragment"));
+        assertThat(document.select("#items li").eachText(), contains("foo", "bar"));
+    }
+
+    @Test
+    public void testMissingFragment() throws IOException {
+        final Connection.Response response = connect(".fragment-missing").ignoreHttpErrors(true).execute();
+        assertThat(response.statusCode(), is(500));
+    }
+
+}
@@ -47,7 +47,7 @@ public class FreemarkerBindingsValuesProviderIT extends FreemarkerTestSupport {
     private Document document;
 
     @Inject
-    @Filter(value = "(path=/apps/freemarker/page/bindings/html.ftl)")
+    @Filter(value = "(path=/apps/freemarker/page/bindings/html.ftl)", timeout = 300000)
     private ResourcePresence resourcePresence;
 
     @Configuration
@@ -50,7 +50,7 @@ public abstract class FreemarkerTestSupport extends TestSupport {
 
     // SlingScriptAdapterFactory
     @Inject
-    @Filter(value = "(adapters=org.apache.sling.api.scripting.SlingScript)")
+    @Filter(value = "(adapters=org.apache.sling.api.scripting.SlingScript)", timeout = 300000)
     protected AdapterFactory adapterFactory;
 
     @Inject
@@ -63,7 +63,7 @@ public abstract class FreemarkerTestSupport extends TestSupport {
     protected HttpService httpService;
 
     @Inject
-    @Filter(value = "(names=freemarker)")
+    @Filter(value = "(names=freemarker)", timeout = 300000)
     protected ScriptEngineFactory scriptEngineFactory;
 
     public ModifiableCompositeOption baseConfiguration() {
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.it.tests;
+
+import java.io.IOException;
+
+import javax.inject.Inject;
+
+import org.apache.sling.commons.metrics.MetricsService;
+import org.apache.sling.resource.presence.ResourcePresence;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.ops4j.pax.exam.Configuration;
+import org.ops4j.pax.exam.Option;
+import org.ops4j.pax.exam.junit.PaxExam;
+import org.ops4j.pax.exam.spi.reactors.ExamReactorStrategy;
+import org.ops4j.pax.exam.spi.reactors.PerClass;
+import org.ops4j.pax.exam.util.Filter;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.ops4j.pax.exam.CoreOptions.options;
+import static org.ops4j.pax.exam.cm.ConfigurationAdminOptions.factoryConfiguration;
+import static org.ops4j.pax.exam.cm.ConfigurationAdminOptions.newConfiguration;
+
+@RunWith(PaxExam.class)
+@ExamReactorStrategy(PerClass.class)
+public class InProcessIncludeIT extends FreemarkerTestSupport {
+
+    private Document document;
+
+    @Inject
+    private MetricsService metricsService;
+
+    @Inject
+    @Filter(value = "(path=/apps/freemarker/page/inprocess/html.ftl)", timeout = 300000)
+    private ResourcePresence resourcePresence;
+
+    @Configuration
+    public Option[] configuration() {
+        return options(
+            baseConfiguration(),
+            newConfiguration("org.apache.sling.scripting.freemarker.internal.InProcessInclude")
+                .put("enabled", true)
+                .put("maxDepth", 10)
+                .asOption(),
+            factoryConfiguration("org.apache.sling.resource.presence.internal.ResourcePresenter")
+                .put("path", "/apps/freemarker/page/inprocess/html.ftl")
+                .asOption()
+        );
+    }
+
+    @Before
+    public void setup() throws IOException {
+        final String url = String.format("http://localhost:%s/freemarker/inprocess.html", httpPort());
+        document = Jsoup.connect(url).get();
+    }
+
+    @Test
+    public void testIncludeResource() {
+        final Element element = document.getElementById("resource");
+        assertThat(element.selectFirst(".path").text(), is("/content/freemarker/inprocess/first"));
+        assertThat(element.selectFirst(".request").text(), is("IncludeRequestWrapper"));
+    }
+
+    @Test
+    public void testIncludePath() {
+        final Element element = document.getElementById("path");
+        assertThat(element.selectFirst(".path").text(), is("/content/freemarker/inprocess/second"));
+        assertThat(element.selectFirst(".request").text(), is("IncludeRequestWrapper"));
+    }
+
+    @Test
+    public void testIncludeSelectors() {
+        final Element element = document.getElementById("selectors");
+        assertThat(element.selectFirst(".compact").text(), is("second"));
+    }
+
+    @Test
+    public void testIncludeResourceType() {
+        final Element element = document.getElementById("resourceType");
+        assertThat(element.selectFirst(".path").text(), is("/content/freemarker/inprocess/plain"));
+        assertThat(element.selectFirst(".type").text(), is("freemarker/item"));
+    }
+
+    @Test
+    public void testIncludeSuffix() {
+        final Element element = document.getElementById("suffix");
+        assertThat(element.selectFirst(".suffix").text(), is("/content/freemarker"));
+    }
+
+    @Test
+    public void testRecursionStopped() {
+        assertThat(document.getElementById("recursion").text(), is("recursion stopped"));
+    }
+
+    @Test
+    public void testIncludesTimed() {
+        assertThat(metricsService.timer("sling.scripting.freemarker.include.dispatches").getCount(), greaterThan(0L));
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.it.tests;
+
+import java.io.IOException;
+
+import javax.inject.Inject;
+import javax.script.ScriptEngineFactory;
+
+import org.apache.sling.commons.metrics.MetricsService;
+import org.apache.sling.resource.presence.ResourcePresence;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.ops4j.pax.exam.Configuration;
+import org.ops4j.pax.exam.Option;
+import org.ops4j.pax.exam.junit.PaxExam;
+import org.ops4j.pax.exam.spi.reactors.ExamReactorStrategy;
+import org.ops4j.pax.exam.spi.reactors.PerClass;
+import org.ops4j.pax.exam.util.Filter;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.ops4j.pax.exam.CoreOptions.options;
+import static org.ops4j.pax.exam.cm.ConfigurationAdminOptions.factoryConfiguration;
+import static org.ops4j.pax.exam.cm.ConfigurationAdminOptions.newConfiguration;
+
+@RunWith(PaxExam.class)
+@ExamReactorStrategy(PerClass.class)
+public class IncludeFallbackIT extends FreemarkerTestSupport {
+
+    private Document document;
+
+    @Inject
+    @Filter(value = "(names=jsp)", timeout = 300000)
+    protected ScriptEngineFactory scriptEngineFactory;
+
+    @Inject
+    private MetricsService metricsService;
+
+    @Inject
+    @Filter(value = "(path=/apps/freemarker/page/fallback/html.ftl)", timeout = 300000)
+    private ResourcePresence resourcePresence;
+
+    @Configuration
+    public Option[] configuration() {
+        return options(
+            baseConfiguration(),
+            newConfiguration("org.apache.sling.scripting.freemarker.internal.IncludeCircuitBreaker")
+                .put("failureThreshold", 2)
+                .put("coolDown", 300)
+                .asOption(),
+            factoryConfiguration("org.apache.sling.resource.presence.internal.ResourcePresenter")
+                .put("path", "/apps/freemarker/page/fallback/html.ftl")
+                .asOption()
+        );
+    }
+
+    @Before
+    public void setup() throws IOException {
+        document = render();
+    }
+
+    @Test
+    public void testFallback() {
+        assertThat(document.getElementById("failing").text(), is("fallback content"));
+    }
+
+    @Test
+    public void testGuardedInclude() {
+        assertThat(document.getElementById("working").text(), is("/content/includes/foo"));
+    }
+
+    @Test
+    public void testCircuitBreaker() throws IOException {
+        for (int i = 0; i < 2; i++) {
+            assertThat(render().getElementById("failing").text(), is("fallback content"));
+        }
+        assertThat(metricsService.meter("sling.scripting.freemarker.include.breakers.tripped").getCount(), greaterThan(0L));
+        assertThat(metricsService.meter("sling.scripting.freemarker.include.skipped").getCount(), greaterThan(0L));
+        assertThat(metricsService.counter("sling.scripting.freemarker.include.breakers.open").getCount(), is(1L));
+    }
+
+    @Test
+    public void testDispatchTimer() {
+        assertThat(metricsService.timer("sling.scripting.freemarker.include.dispatches").getCount(), greaterThan(0L));
+    }
+
+    private Document render() throws IOException {
+        final String url = String.format("http://localhost:%s/freemarker/fallback.html", httpPort());
+        return Jsoup.connect(url).get();
+    }
+
+}
@@ -49,11 +49,11 @@ public class IncludeIT extends FreemarkerTestSupport {
     private Document document;
 
     @Inject
-    @Filter(value = "(names=jsp)")
+    @Filter(value = "(names=jsp)", timeout = 300000)
     protected ScriptEngineFactory scriptEngineFactory;
 
     @Inject
-    @Filter(value = "(path=/apps/freemarker/page/include/html.ftl)")
+    @Filter(value = "(path=/apps/freemarker/page/include/html.ftl)", timeout = 300000)
     private ResourcePresence resourcePresence;
 
     @Configuration
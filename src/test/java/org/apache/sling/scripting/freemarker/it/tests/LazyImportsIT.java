@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.it.tests;
+
+import java.io.IOException;
+
+import javax.inject.Inject;
+
+import org.apache.sling.resource.presence.ResourcePresence;
+import org.apache.sling.scripting.freemarker.it.app.LazyImportsConfiguration;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.ops4j.pax.exam.Configuration;
+import org.ops4j.pax.exam.Option;
+import org.ops4j.pax.exam.junit.PaxExam;
+import org.ops4j.pax.exam.spi.reactors.ExamReactorStrategy;
+import org.ops4j.pax.exam.spi.reactors.PerClass;
+import org.ops4j.pax.exam.util.Filter;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.ops4j.pax.exam.CoreOptions.options;
+import static org.ops4j.pax.exam.cm.ConfigurationAdminOptions.factoryConfiguration;
+
+@RunWith(PaxExam.class)
+@ExamReactorStrategy(PerClass.class)
+public class LazyImportsIT extends FreemarkerTestSupport {
+
+    @Inject
+    @Filter(value = "(path=/apps/freemarker/page/lazy/html.ftl)", timeout = 300000)
+    private ResourcePresence resourcePresence;
+
+    @Inject
+    @Filter("(sling.scripting.freemarker.tenant=lazy)")
+    private freemarker.template.Configuration configuration;
+
+    @Configuration
+    public Option[] configuration() {
+        return options(
+            baseConfiguration(),
+            buildBundleWithBnd(
+                LazyImportsConfiguration.class
+            ),
+            factoryConfiguration("org.apache.sling.resource.presence.internal.ResourcePresenter")
+                .put("path", "/apps/freemarker/page/lazy/html.ftl")
+                .asOption()
+        );
+    }
+
+    @Test
+    public void testLazyImportsOfConfigurationKept() throws IOException {
+        final String url = String.format("http://localhost:%s/freemarker/lazy.html", httpPort());
+        final Document document = Jsoup.connect(url).get();
+        assertThat(document.title(), is("FreeMarker Lazy Imports"));
+        // the imported library is not executed as its namespace is never accessed
+        assertThat(document.getElementById("executed").text(), is("false"));
+    }
+
+}
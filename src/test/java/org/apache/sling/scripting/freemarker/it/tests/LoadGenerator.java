@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.it.tests;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives a URL with concurrent clients and measures throughput, latency percentiles and GC activity.
+ */
+class LoadGenerator {
+
+    private final int clients;
+
+    private final int requests;
+
+    private final int warmup;
+
+    LoadGenerator(final int clients, final int requests, final int warmup) {
+        this.clients = clients;
+        this.requests = requests;
+        this.warmup = warmup;
+    }
+
+    Result run(final String url) throws Exception {
+        for (int i = 0; i < warmup; i++) {
+            request(url);
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(clients);
+        try {
+            final List<Callable<long[]>> tasks = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+                tasks.add(() -> client(url, requests / clients));
+            }
+            final long gcCount = gcCount();
+            final long gcTime = gcTime();
+            final long start = System.nanoTime();
+            final List<Future<long[]>> futures = executor.invokeAll(tasks);
+            final long elapsed = System.nanoTime() - start;
+            final List<long[]> latencies = new ArrayList<>();
+            for (final Future<long[]> future : futures) {
+                latencies.add(future.get());
+            }
+            return new Result(url, merge(latencies), elapsed, gcCount() - gcCount, gcTime() - gcTime);
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    private static long[] client(final String url, final int count) throws IOException {
+        final long[] latencies = new long[count];
+        for (int i = 0; i < count; i++) {
+            final long start = System.nanoTime();
+            request(url);
+            latencies[i] = System.nanoTime() - start;
+        }
+        return latencies;
+    }
+
+    /**
+     * Requests a URL and drains the response body so the connection can be reused.
+     */
+    static void request(final String url) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        final int status = connection.getResponseCode();
+        if (status != HttpURLConnection.HTTP_OK) {
+            throw new IOException(String.format("unexpected status %s for %s", status, url));
+        }
+        try (InputStream inputStream = connection.getInputStream()) {
+            final byte[] buffer = new byte[8192];
+            while (inputStream.read(buffer) != -1) { //
+            }
+        }
+    }
+
+    private static long[] merge(final List<long[]> latencies) {
+        final long[] merged = new long[latencies.stream().mapToInt(l -> l.length).sum()];
+        int position = 0;
+        for (final long[] l : latencies) {
+            System.arraycopy(l, 0, merged, position, l.length);
+            position += l.length;
+        }
+        Arrays.sort(merged);
+        return merged;
+    }
+
+    private static long gcCount() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+    }
+
+    private static long gcTime() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+    }
+
+    /**
+     * Measurements of a single load run.
+     */
+    static class Result {
+
+        private final String url;
+
+        private final long[] latencies;
+
+        private final long elapsed;
+
+        private final long gcCount;
+
+        private final long gcTime;
+
+        Result(final String url, final long[] latencies, final long elapsed, final long gcCount, final long gcTime) {
+            this.url = url;
+            this.latencies = latencies;
+            this.elapsed = elapsed;
+            this.gcCount = gcCount;
+            this.gcTime = gcTime;
+        }
+
+        int count() {
+            return latencies.length;
+        }
+
+        double throughput() {
+            return latencies.length / (elapsed / 1e9);
+        }
+
+        double percentile(final double percentile) {
+            final int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+            return latencies[Math.max(0, index)] / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d requests, %.1f req/s, latency ms p50=%.2f p90=%.2f p99=%.2f max=%.2f, gc count=%d time=%dms",
+                url, count(), throughput(), percentile(50), percentile(90), percentile(99), percentile(100), gcCount, gcTime);
+        }
+
+    }
+
+}
@@ -0,0 +1,213 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.it.tests;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.wrappers.SlingHttpServletResponseWrapper;
+import org.apache.sling.resource.presence.ResourcePresence;
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.ops4j.pax.exam.Configuration;
+import org.ops4j.pax.exam.Option;
+import org.ops4j.pax.exam.junit.PaxExam;
+import org.ops4j.pax.exam.spi.reactors.ExamReactorStrategy;
+import org.ops4j.pax.exam.spi.reactors.PerClass;
+import org.ops4j.pax.exam.util.Filter;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.ops4j.pax.exam.CoreOptions.options;
+import static org.ops4j.pax.exam.cm.ConfigurationAdminOptions.factoryConfiguration;
+import static org.ops4j.pax.exam.cm.ConfigurationAdminOptions.newConfiguration;
+
+@RunWith(PaxExam.class)
+@ExamReactorStrategy(PerClass.class)
+public class PreEncodeStaticTextIT extends FreemarkerTestSupport {
+
+    private static final String STATIC_TEXT = "Grüße aus Köln, naïve café";
+
+    private static final String DYNAMIC_TEXT = "Ça coûte cinq francs";
+
+    private static final String PRE_ENCODED = "bytes of static text pre-encoded in ";
+
+    @Inject
+    private BundleContext bundleContext;
+
+    @Inject
+    @Filter(value = "(path=/apps/freemarker/page/simple/html.ftl)", timeout = 300000)
+    private ResourcePresence resourcePresence;
+
+    @Inject
+    @Filter(value = "(path=/apps/freemarker/page/statictext/html.ftl)", timeout = 300000)
+    private ResourcePresence staticTextPresence;
+
+    @Configuration
+    public Option[] configuration() {
+        return options(
+            baseConfiguration(),
+            newConfiguration("org.apache.sling.scripting.freemarker.internal.FreemarkerScriptEngineFactory")
+                .put("preEncodeStaticText", true)
+                .asOption(),
+            factoryConfiguration("org.apache.sling.resource.presence.internal.ResourcePresenter")
+                .put("path", "/apps/freemarker/page/simple/html.ftl")
+                .asOption(),
+            factoryConfiguration("org.apache.sling.resource.presence.internal.ResourcePresenter")
+                .put("path", "/apps/freemarker/page/statictext/html.ftl")
+                .asOption()
+        );
+    }
+
+    private Document document() throws IOException {
+        final String url = String.format("http://localhost:%s/freemarker/simple.html", httpPort());
+        return Jsoup.connect(url).get();
+    }
+
+    @Test
+    public void testRepeatedRendering() throws IOException {
+        final Document first = document();
+        final Document second = document();
+        assertThat(first.title(), is("FreeMarker Simple"));
+        assertThat(second.getElementById("name").text(), is("simple"));
+        assertThat(second.html(), is(first.html()));
+    }
+
+    @Test
+    public void testUtf8() throws IOException, InterruptedException {
+        final CharsetFilter filter = render(StandardCharsets.UTF_8);
+        assertThat(filter.messages, hasItem(containsString(PRE_ENCODED.concat("UTF-8"))));
+        assertThat(filter.messages, not(hasItem(containsString(", 0 ".concat(PRE_ENCODED)))));
+    }
+
+    @Test
+    public void testLatin1() throws IOException, InterruptedException {
+        final CharsetFilter filter = render(StandardCharsets.ISO_8859_1);
+        assertThat(filter.messages, hasItem(containsString(PRE_ENCODED.concat("ISO-8859-1"))));
+        assertThat(filter.messages, not(hasItem(containsString(", 0 ".concat(PRE_ENCODED)))));
+    }
+
+    @Test
+    public void testStatefulCharsetNotPreEncoded() throws IOException, InterruptedException {
+        final CharsetFilter filter = render(StandardCharsets.UTF_16);
+        assertThat(filter.messages, not(hasItem(containsString(PRE_ENCODED))));
+    }
+
+    // renders the static text page in a charset, checking the encoded bytes against the expected encoding
+    private CharsetFilter render(final Charset charset) throws IOException, InterruptedException {
+        final CharsetFilter filter = new CharsetFilter(charset);
+        final Dictionary<String, Object> properties = new Hashtable<>();
+        properties.put("sling.filter.scope", "COMPONENT");
+        final ServiceRegistration<javax.servlet.Filter> registration = bundleContext.registerService(javax.servlet.Filter.class, filter, properties);
+        try {
+            final String url = String.format("http://localhost:%s/freemarker/statictext.html", httpPort());
+            final Connection.Response response = Jsoup.connect(url).execute();
+            final byte[] bytes = response.bodyAsBytes();
+            assertThat(Charset.forName(response.charset()), is(charset));
+            final Document document = Jsoup.parse(new String(bytes, charset));
+            assertThat(document.getElementById("static").text(), is(STATIC_TEXT));
+            assertThat(document.getElementById("dynamic").text(), is(DYNAMIC_TEXT));
+            assertThat(contains(bytes, STATIC_TEXT.getBytes(charset)) || charset.equals(StandardCharsets.UTF_16), is(true));
+            assertThat(filter.processed.await(10, TimeUnit.SECONDS), is(true));
+        } finally {
+            registration.unregister();
+        }
+        return filter;
+    }
+
+    private static boolean contains(final byte[] bytes, final byte[] part) {
+        for (int i = 0; i + part.length <= bytes.length; i++) {
+            int j = 0;
+            while (j < part.length && bytes[i + j] == part[j]) {
+                j++;
+            }
+            if (j == part.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sets the response's charset for rendering and captures the messages of the request progress tracker after.
+     */
+    private static class CharsetFilter implements javax.servlet.Filter {
+
+        private final Charset charset;
+
+        private final List<String> messages = new ArrayList<>();
+
+        private final CountDownLatch processed = new CountDownLatch(1);
+
+        CharsetFilter(final Charset charset) {
+            this.charset = charset;
+        }
+
+        @Override
+        public void init(final FilterConfig filterConfig) {
+        }
+
+        @Override
+        public void doFilter(final ServletRequest request, final ServletResponse response, final FilterChain chain) throws IOException, ServletException {
+            // the script sets its default charset after the filters ran
+            chain.doFilter(request, new SlingHttpServletResponseWrapper((SlingHttpServletResponse) response) {
+                @Override
+                public void setCharacterEncoding(final String encoding) {
+                    super.setCharacterEncoding(charset.name());
+                }
+            });
+            final Iterator<String> iterator = ((SlingHttpServletRequest) request).getRequestProgressTracker().getMessages();
+            while (iterator.hasNext()) {
+                messages.add(iterator.next());
+            }
+            processed.countDown();
+        }
+
+        @Override
+        public void destroy() {
+        }
+
+    }
+
+}
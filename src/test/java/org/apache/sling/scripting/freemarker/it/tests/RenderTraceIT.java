@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.it.tests;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.resource.presence.ResourcePresence;
+import org.jsoup.Jsoup;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.ops4j.pax.exam.Configuration;
+import org.ops4j.pax.exam.Option;
+import org.ops4j.pax.exam.junit.PaxExam;
+import org.ops4j.pax.exam.spi.reactors.ExamReactorStrategy;
+import org.ops4j.pax.exam.spi.reactors.PerClass;
+import org.ops4j.pax.exam.util.Filter;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.ops4j.pax.exam.CoreOptions.options;
+import static org.ops4j.pax.exam.cm.ConfigurationAdminOptions.factoryConfiguration;
+
+@RunWith(PaxExam.class)
+@ExamReactorStrategy(PerClass.class)
+public class RenderTraceIT extends FreemarkerTestSupport {
+
+    private final List<String> messages = new ArrayList<>();
+
+    private final CountDownLatch processed = new CountDownLatch(1);
+
+    @Inject
+    private BundleContext bundleContext;
+
+    @Inject
+    @Filter(value = "(path=/apps/freemarker/page/include/html.ftl)", timeout = 300000)
+    private ResourcePresence resourcePresence;
+
+    @Configuration
+    public Option[] configuration() {
+        return options(
+            baseConfiguration(),
+            factoryConfiguration("org.apache.sling.resource.presence.internal.ResourcePresenter")
+                .put("path", "/apps/freemarker/page/include/html.ftl")
+                .asOption()
+        );
+    }
+
+    private List<String> trace(final String path) throws IOException, InterruptedException {
+        final Dictionary<String, Object> properties = new Hashtable<>();
+        properties.put("sling.filter.scope", "COMPONENT");
+        final ServiceRegistration<javax.servlet.Filter> registration = bundleContext.registerService(javax.servlet.Filter.class, new TrackerFilter(), properties);
+        try {
+            Jsoup.connect(String.format("http://localhost:%s%s", httpPort(), path)).get();
+            assertThat(processed.await(10, TimeUnit.SECONDS), is(true));
+        } finally {
+            registration.unregister();
+        }
+        return messages;
+    }
+
+    @Test
+    public void testIncludeTrace() throws IOException, InterruptedException {
+        final List<String> trace = trace("/freemarker/include.html");
+        final String render = "FreeMarker render /apps/freemarker/page/include/html.ftl";
+        assertThat(trace, hasItem(containsString(render)));
+        assertThat(trace, hasItem(containsString(String.format("%s > include /content/includes/foo", render))));
+        assertThat(trace, hasItem(containsString("resourceType jsp/page/resource")));
+    }
+
+    /**
+     * Captures the messages of the request progress tracker after rendering the requested resource.
+     */
+    private class TrackerFilter implements javax.servlet.Filter {
+
+        @Override
+        public void init(final FilterConfig filterConfig) {
+        }
+
+        @Override
+        public void doFilter(final ServletRequest request, final ServletResponse response, final FilterChain chain) throws IOException, ServletException {
+            // component filters also wrap includes, capture after the outermost rendering only
+            if (request.getAttribute(TrackerFilter.class.getName()) != null) {
+                chain.doFilter(request, response);
+                return;
+            }
+            request.setAttribute(TrackerFilter.class.getName(), Boolean.TRUE);
+            chain.doFilter(request, response);
+            final Iterator<String> iterator = ((SlingHttpServletRequest) request).getRequestProgressTracker().getMessages();
+            while (iterator.hasNext()) {
+                messages.add(iterator.next());
+            }
+            processed.countDown();
+        }
+
+        @Override
+        public void destroy() {
+        }
+
+    }
+
+}
@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.it.tests;
+
+import java.io.IOException;
+import java.util.Dictionary;
+import java.util.Hashtable;
+
+import javax.inject.Inject;
+
+import org.apache.sling.resource.presence.ResourcePresence;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.ops4j.pax.exam.Configuration;
+import org.ops4j.pax.exam.Option;
+import org.ops4j.pax.exam.junit.PaxExam;
+import org.ops4j.pax.exam.spi.reactors.ExamReactorStrategy;
+import org.ops4j.pax.exam.spi.reactors.PerClass;
+import org.ops4j.pax.exam.util.Filter;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.ops4j.pax.exam.CoreOptions.composite;
+import static org.ops4j.pax.exam.CoreOptions.options;
+import static org.ops4j.pax.exam.cm.ConfigurationAdminOptions.factoryConfiguration;
+import static org.ops4j.pax.exam.cm.ConfigurationAdminOptions.newConfiguration;
+
+/**
+ * Allocation regression tests for the render path.
+ *
+ * <p>Measures the median bytes allocated per rendering of reference pages in evaluating the script, collecting the
+ * template models and including resources, as traced by the script engine, and fails when a budget is exceeded. The
+ * budgets leave about 25% headroom over the allocations measured with FreeMarker 2.3.32 on Java 17, so the tests are
+ * run with the {@code load-test} profile only.
+ */
+@RunWith(PaxExam.class)
+@ExamReactorStrategy(PerClass.class)
+public class RenderingAllocationIT extends FreemarkerTestSupport {
+
+    private static final String[] SCRIPTS = {
+        "/apps/freemarker/page/simple/html.ftl",
+        "/apps/freemarker/page/include/html.ftl",
+        "/apps/freemarker/page/adaptto/html.ftl",
+        "/apps/freemarker/page/bindings/html.ftl"
+    };
+
+    private static final long EVAL = 180_000L;
+
+    private static final long EVAL_ADAPT_TO = 200_000L;
+
+    private static final long TEMPLATE_MODELS = 2_100L;
+
+    private static final long INCLUDE = 150_000L;
+
+    private static final int WARMUP = 200;
+
+    private static final int RENDERINGS = 50;
+
+    private final Logger logger = LoggerFactory.getLogger(RenderingAllocationIT.class);
+
+    private AllocationRecorder allocationRecorder;
+
+    private ServiceRegistration<javax.servlet.Filter> registration;
+
+    @Inject
+    private BundleContext bundleContext;
+
+    @Inject
+    @Filter(value = "(path=/apps/freemarker/page/simple/html.ftl)", timeout = 300000)
+    private ResourcePresence simple;
+
+    @Inject
+    @Filter(value = "(path=/apps/freemarker/page/include/html.ftl)", timeout = 300000)
+    private ResourcePresence include;
+
+    @Inject
+    @Filter(value = "(path=/apps/freemarker/page/adaptto/html.ftl)", timeout = 300000)
+    private ResourcePresence adaptto;
+
+    @Inject
+    @Filter(value = "(path=/apps/freemarker/page/bindings/html.ftl)", timeout = 300000)
+    private ResourcePresence bindings;
+
+    @Configuration
+    public Option[] configuration() {
+        final Option[] resourcePresences = new Option[SCRIPTS.length];
+        for (int i = 0; i < SCRIPTS.length; i++) {
+            resourcePresences[i] = factoryConfiguration("org.apache.sling.resource.presence.internal.ResourcePresenter")
+                .put("path", SCRIPTS[i])
+                .asOption();
+        }
+        return options(
+            baseConfiguration(),
+            newConfiguration("org.apache.sling.scripting.freemarker.internal.FreemarkerScriptEngineFactory")
+                .put("traceAllocations", true)
+                .asOption(),
+            composite(resourcePresences)
+        );
+    }
+
+    @Before
+    public void setup() {
+        allocationRecorder = new AllocationRecorder();
+        final Dictionary<String, Object> properties = new Hashtable<>();
+        properties.put("sling.filter.scope", "REQUEST");
+        registration = bundleContext.registerService(javax.servlet.Filter.class, allocationRecorder, properties);
+    }
+
+    @After
+    public void teardown() {
+        registration.unregister();
+    }
+
+    private void render(final String path) throws IOException {
+        final String url = String.format("http://localhost:%s%s", httpPort(), path);
+        for (int i = 0; i < WARMUP; i++) {
+            LoadGenerator.request(url);
+        }
+        allocationRecorder.reset();
+        for (int i = 0; i < RENDERINGS; i++) {
+            LoadGenerator.request(url);
+        }
+    }
+
+    private long allocated(final String step) {
+        final long allocated = allocationRecorder.median(step);
+        logger.info("{}: {} bytes allocated per rendering", step, allocated);
+        return allocated;
+    }
+
+    @Test
+    public void testSimple() throws IOException {
+        render("/freemarker/simple.html");
+        assertThat(allocated("render /apps/freemarker/page/simple/html.ftl"), lessThanOrEqualTo(EVAL));
+        assertThat(allocated("render /apps/freemarker/page/simple/html.ftl > template models"), lessThanOrEqualTo(TEMPLATE_MODELS));
+    }
+
+    @Test
+    public void testInclude() throws IOException {
+        render("/freemarker/include.html");
+        assertThat(allocated("render /apps/freemarker/page/include/html.ftl > include /content/includes/foo"), lessThanOrEqualTo(INCLUDE));
+        assertThat(allocated("render /apps/freemarker/page/include/html.ftl > template models"), lessThanOrEqualTo(TEMPLATE_MODELS));
+    }
+
+    @Test
+    public void testAdaptTo() throws IOException {
+        render("/freemarker/adaptto.html");
+        assertThat(allocated("render /apps/freemarker/page/adaptto/html.ftl"), lessThanOrEqualTo(EVAL_ADAPT_TO));
+    }
+
+    @Test
+    public void testBindings() throws IOException {
+        render("/freemarker/bindings.html");
+        assertThat(allocated("render /apps/freemarker/page/bindings/html.ftl"), lessThanOrEqualTo(EVAL));
+    }
+
+}
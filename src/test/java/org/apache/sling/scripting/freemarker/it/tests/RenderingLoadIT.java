@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.it.tests;
+
+import javax.inject.Inject;
+
+import org.apache.sling.resource.presence.ResourcePresence;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.ops4j.pax.exam.Configuration;
+import org.ops4j.pax.exam.Option;
+import org.ops4j.pax.exam.junit.PaxExam;
+import org.ops4j.pax.exam.spi.reactors.ExamReactorStrategy;
+import org.ops4j.pax.exam.spi.reactors.PerClass;
+import org.ops4j.pax.exam.util.Filter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.ops4j.pax.exam.CoreOptions.composite;
+import static org.ops4j.pax.exam.CoreOptions.options;
+import static org.ops4j.pax.exam.CoreOptions.systemProperty;
+import static org.ops4j.pax.exam.cm.ConfigurationAdminOptions.factoryConfiguration;
+
+/**
+ * Load test for the FreeMarker pages, run with {@code mvn verify -Pload-test}.
+ *
+ * <p>Clients, requests and warmup requests per page are set with {@code load.clients}, {@code load.requests} and
+ * {@code load.warmup}.
+ */
+@RunWith(PaxExam.class)
+@ExamReactorStrategy(PerClass.class)
+public class RenderingLoadIT extends FreemarkerTestSupport {
+
+    private static final String[] SCRIPTS = {
+        "/apps/freemarker/page/simple/html.ftl",
+        "/apps/freemarker/page/simple/jsp.html.jsp",
+        "/apps/freemarker/page/include/html.ftl",
+        "/apps/freemarker/page/adaptto/html.ftl",
+        "/apps/freemarker/page/bindings/html.ftl"
+    };
+
+    private final Logger logger = LoggerFactory.getLogger(RenderingLoadIT.class);
+
+    @Inject
+    @Filter(value = "(path=/apps/freemarker/page/simple/html.ftl)", timeout = 300000)
+    private ResourcePresence simple;
+
+    @Inject
+    @Filter(value = "(path=/apps/freemarker/page/simple/jsp.html.jsp)", timeout = 300000)
+    private ResourcePresence simpleJsp;
+
+    @Inject
+    @Filter(value = "(path=/apps/freemarker/page/include/html.ftl)", timeout = 300000)
+    private ResourcePresence include;
+
+    @Inject
+    @Filter(value = "(path=/apps/freemarker/page/adaptto/html.ftl)", timeout = 300000)
+    private ResourcePresence adaptto;
+
+    @Inject
+    @Filter(value = "(path=/apps/freemarker/page/bindings/html.ftl)", timeout = 300000)
+    private ResourcePresence bindings;
+
+    @Configuration
+    public Option[] configuration() {
+        return options(
+            baseConfiguration(),
+            resourcePresences(),
+            systemProperty("load.clients").value(System.getProperty("load.clients", "16")),
+            systemProperty("load.requests").value(System.getProperty("load.requests", "2000")),
+            systemProperty("load.warmup").value(System.getProperty("load.warmup", "200"))
+        );
+    }
+
+    private Option resourcePresences() {
+        final Option[] options = new Option[SCRIPTS.length];
+        for (int i = 0; i < SCRIPTS.length; i++) {
+            options[i] = factoryConfiguration("org.apache.sling.resource.presence.internal.ResourcePresenter")
+                .put("path", SCRIPTS[i])
+                .asOption();
+        }
+        return composite(options);
+    }
+
+    private LoadGenerator.Result run(final String path) throws Exception {
+        final LoadGenerator loadGenerator = new LoadGenerator(
+            Integer.getInteger("load.clients"),
+            Integer.getInteger("load.requests"),
+            Integer.getInteger("load.warmup")
+        );
+        final String url = String.format("http://localhost:%s%s", httpPort(), path);
+        final LoadGenerator.Result result = loadGenerator.run(url);
+        logger.info("{}", result);
+        return result;
+    }
+
+    @Test
+    public void testFreemarkerPages() throws Exception {
+        for (final String page : new String[]{"simple", "include", "adaptto", "bindings"}) {
+            final LoadGenerator.Result result = run(String.format("/freemarker/%s.html", page));
+            assertThat(result.count() > 0, is(true));
+        }
+    }
+
+    @Test
+    public void testFreemarkerComparedToJsp() throws Exception {
+        final LoadGenerator.Result freemarker = run("/freemarker/simple.html");
+        final LoadGenerator.Result jsp = run("/freemarker/simple.jsp.html");
+        logger.info("FreeMarker/JSP throughput ratio for simple page: {}", freemarker.throughput() / jsp.throughput());
+        assertThat(freemarker.count(), is(jsp.count()));
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.it.tests;
+
+import java.io.IOException;
+
+import javax.inject.Inject;
+
+import org.apache.sling.commons.metrics.MetricsService;
+import org.apache.sling.resource.presence.ResourcePresence;
+import org.apache.sling.scripting.freemarker.it.app.SharedTemplatesConfiguration;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.ops4j.pax.exam.Configuration;
+import org.ops4j.pax.exam.Option;
+import org.ops4j.pax.exam.junit.PaxExam;
+import org.ops4j.pax.exam.spi.reactors.ExamReactorStrategy;
+import org.ops4j.pax.exam.spi.reactors.PerClass;
+import org.ops4j.pax.exam.util.Filter;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.ops4j.pax.exam.CoreOptions.options;
+import static org.ops4j.pax.exam.cm.ConfigurationAdminOptions.factoryConfiguration;
+
+@RunWith(PaxExam.class)
+@ExamReactorStrategy(PerClass.class)
+public class SharedTemplateIT extends FreemarkerTestSupport {
+
+    @Inject
+    private MetricsService metricsService;
+
+    @Inject
+    @Filter(value = "(path=/apps/freemarker/page/variant/print.html.ftl)", timeout = 300000)
+    private ResourcePresence variant;
+
+    @Inject
+    @Filter(value = "(path=/apps/freemarker/page/other/html.ftl)", timeout = 300000)
+    private ResourcePresence other;
+
+    @Inject
+    @Filter("(sling.scripting.freemarker.tenant=shared)")
+    private freemarker.template.Configuration configuration;
+
+    @Configuration
+    public Option[] configuration() {
+        return options(
+            baseConfiguration(),
+            buildBundleWithBnd(
+                SharedTemplatesConfiguration.class
+            ),
+            factoryConfiguration("org.apache.sling.resource.presence.internal.ResourcePresenter")
+                .put("path", "/apps/freemarker/page/variant/print.html.ftl")
+                .asOption(),
+            factoryConfiguration("org.apache.sling.resource.presence.internal.ResourcePresenter")
+                .put("path", "/apps/freemarker/page/other/html.ftl")
+                .asOption()
+        );
+    }
+
+    private Document get(final String page) throws IOException {
+        final String url = String.format("http://localhost:%s/freemarker/%s.html", httpPort(), page);
+        return Jsoup.connect(url).get();
+    }
+
+    @Test
+    public void testSharedTemplate() throws IOException {
+        final Document first = get("variant1");
+        final Document second = get("variant1.print");
+        assertThat(first.title(), is("Sling Variant 1"));
+        assertThat(first.getElementById("path").text(), is("/content/freemarker/variant1"));
+        assertThat(second.title(), is("Sling Variant 1"));
+        assertThat(second.getElementById("folder").text(), is("variant"));
+        assertThat(metricsService.meter("sling.scripting.freemarker.templates.shared.shares").getCount(), greaterThan(0L));
+    }
+
+    @Test
+    public void testIncludeResolvedInScriptFolder() throws IOException {
+        final Document first = get("variant1");
+        final Document second = get("variant2");
+        assertThat(first.getElementById("folder").text(), is("variant"));
+        assertThat(second.title(), is("Sling Variant 2"));
+        assertThat(second.getElementById("path").text(), is("/content/freemarker/variant2"));
+        assertThat(second.getElementById("folder").text(), is("other"));
+    }
+
+}
@@ -48,7 +48,7 @@ public class SimpleIT extends FreemarkerTestSupport {
     private Document document;
 
     @Inject
-    @Filter(value = "(path=/apps/freemarker/page/simple/html.ftl)")
+    @Filter(value = "(path=/apps/freemarker/page/simple/html.ftl)", timeout = 300000)
     private ResourcePresence resourcePresence;
 
     @Configuration
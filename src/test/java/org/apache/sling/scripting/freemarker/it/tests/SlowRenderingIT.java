@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.it.tests;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import freemarker.template.SimpleNumber;
+import freemarker.template.TemplateMethodModelEx;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateNumberModel;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.resource.presence.ResourcePresence;
+import org.jsoup.Jsoup;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.ops4j.pax.exam.Configuration;
+import org.ops4j.pax.exam.Option;
+import org.ops4j.pax.exam.junit.PaxExam;
+import org.ops4j.pax.exam.spi.reactors.ExamReactorStrategy;
+import org.ops4j.pax.exam.spi.reactors.PerClass;
+import org.ops4j.pax.exam.util.Filter;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.ops4j.pax.exam.CoreOptions.options;
+import static org.ops4j.pax.exam.cm.ConfigurationAdminOptions.factoryConfiguration;
+import static org.ops4j.pax.exam.cm.ConfigurationAdminOptions.newConfiguration;
+
+@RunWith(PaxExam.class)
+@ExamReactorStrategy(PerClass.class)
+public class SlowRenderingIT extends FreemarkerTestSupport {
+
+    private final List<String> messages = new ArrayList<>();
+
+    private final CountDownLatch processed = new CountDownLatch(1);
+
+    @Inject
+    private BundleContext bundleContext;
+
+    @Inject
+    @Filter(value = "(path=/apps/freemarker/page/slow/html.ftl)", timeout = 300000)
+    private ResourcePresence resourcePresence;
+
+    @Configuration
+    public Option[] configuration() {
+        return options(
+            baseConfiguration(),
+            newConfiguration("org.apache.sling.scripting.freemarker.internal.FreemarkerScriptEngineFactory")
+                .put("slowRenderingThreshold", 200L)
+                .asOption(),
+            factoryConfiguration("org.apache.sling.resource.presence.internal.ResourcePresenter")
+                .put("path", "/apps/freemarker/page/slow/html.ftl")
+                .asOption()
+        );
+    }
+
+    @Test
+    public void testSlowRenderingLogged() throws IOException, InterruptedException {
+        final Dictionary<String, Object> sleepProperties = new Hashtable<>();
+        sleepProperties.put("namespace", "test");
+        sleepProperties.put("name", "sleep");
+        final ServiceRegistration<TemplateModel> sleep = bundleContext.registerService(TemplateModel.class, new Sleep(), sleepProperties);
+        final Dictionary<String, Object> filterProperties = new Hashtable<>();
+        filterProperties.put("sling.filter.scope", "REQUEST");
+        final ServiceRegistration<javax.servlet.Filter> filter = bundleContext.registerService(javax.servlet.Filter.class, new TrackerFilter(), filterProperties);
+        try {
+            final String url = String.format("http://localhost:%s/freemarker/slow.html", httpPort());
+            assertThat(Jsoup.connect(url).get().getElementById("slow").text(), is("300"));
+            assertThat(processed.await(10, TimeUnit.SECONDS), is(true));
+        } finally {
+            filter.unregister();
+            sleep.unregister();
+        }
+        assertThat(messages, hasItem(allOf(
+            containsString("slow rendering of script /apps/freemarker/page/slow/html.ftl for resource /content/freemarker/slow"),
+            containsString("before instruction ${test.sleep(300)}")
+        )));
+    }
+
+    /**
+     * Captures the messages of the request progress tracker after processing the request.
+     */
+    private class TrackerFilter implements javax.servlet.Filter {
+
+        @Override
+        public void init(final FilterConfig filterConfig) {
+        }
+
+        @Override
+        public void doFilter(final ServletRequest request, final ServletResponse response, final FilterChain chain) throws IOException, ServletException {
+            chain.doFilter(request, response);
+            final Iterator<String> iterator = ((SlingHttpServletRequest) request).getRequestProgressTracker().getMessages();
+            while (iterator.hasNext()) {
+                messages.add(iterator.next());
+            }
+            processed.countDown();
+        }
+
+        @Override
+        public void destroy() {
+        }
+
+    }
+
+    /**
+     * Sleeps for the given number of milliseconds and returns them.
+     */
+    private static class Sleep implements TemplateMethodModelEx {
+
+        @Override
+        public Object exec(final List arguments) throws TemplateModelException {
+            final Number millis = ((TemplateNumberModel) arguments.get(0)).getAsNumber();
+            try {
+                Thread.sleep(millis.longValue());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TemplateModelException(e);
+            }
+            return new SimpleNumber(millis);
+        }
+
+    }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.it.tests;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.inject.Inject;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.resource.presence.ResourcePresence;
+import org.apache.sling.scripting.freemarker.StaticExportListener;
+import org.apache.sling.scripting.freemarker.StaticExporter;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.ops4j.pax.exam.Configuration;
+import org.ops4j.pax.exam.Option;
+import org.ops4j.pax.exam.junit.PaxExam;
+import org.ops4j.pax.exam.spi.reactors.ExamReactorStrategy;
+import org.ops4j.pax.exam.spi.reactors.PerClass;
+import org.ops4j.pax.exam.util.Filter;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.ops4j.pax.exam.CoreOptions.options;
+import static org.ops4j.pax.exam.cm.ConfigurationAdminOptions.factoryConfiguration;
+import static org.ops4j.pax.exam.cm.ConfigurationAdminOptions.newConfiguration;
+
+@RunWith(PaxExam.class)
+@ExamReactorStrategy(PerClass.class)
+public class StaticExporterIT extends FreemarkerTestSupport {
+
+    private ResourceResolver resourceResolver;
+
+    private Path directory;
+
+    private final List<String> exported = new CopyOnWriteArrayList<>();
+
+    private final List<String> failed = new CopyOnWriteArrayList<>();
+
+    private int count;
+
+    @Inject
+    private StaticExporter staticExporter;
+
+    @Inject
+    private ResourceResolverFactory resourceResolverFactory;
+
+    @Inject
+    @Filter(value = "(path=/apps/freemarker/page/simple/html.ftl)", timeout = 300000)
+    private ResourcePresence resourcePresence;
+
+    @Configuration
+    public Option[] configuration() {
+        return options(
+            baseConfiguration(),
+            newConfiguration("org.apache.sling.jcr.base.internal.LoginAdminWhitelist")
+                .put("whitelist.bypass", true)
+                .asOption(),
+            newConfiguration("org.apache.sling.scripting.freemarker.internal.FreemarkerStaticExporter")
+                .put("parallelism", 2)
+                .asOption(),
+            factoryConfiguration("org.apache.sling.resource.presence.internal.ResourcePresenter")
+                .put("path", "/apps/freemarker/page/simple/html.ftl")
+                .asOption()
+        );
+    }
+
+    @Before
+    @SuppressWarnings("deprecation")
+    public void setup() throws LoginException, IOException {
+        resourceResolver = resourceResolverFactory.getAdministrativeResourceResolver(null);
+        directory = Files.createTempDirectory("freemarker-export");
+        count = staticExporter.export(resourceResolver, "/content/freemarker", directory, new StaticExportListener() {
+
+            @Override
+            public void exported(final String path, final Path file, final long time, final int completed, final int total) {
+                exported.add(path);
+            }
+
+            @Override
+            public void failed(final String path, final Exception exception, final int completed, final int total) {
+                failed.add(path);
+            }
+
+        });
+    }
+
+    @After
+    public void teardown() {
+        resourceResolver.close();
+    }
+
+    @Test
+    public void testExported() {
+        assertThat(exported, hasItems("/content/freemarker/simple", "/content/freemarker/bindings"));
+        assertThat(count, is(exported.size()));
+    }
+
+    @Test
+    public void testExportedFile() throws IOException {
+        final Path file = directory.resolve("content/freemarker/simple.html");
+        final Document document = Jsoup.parse(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        assertThat(document.title(), is("FreeMarker Simple"));
+    }
+
+    @Test
+    public void testExportedWithBindingsValuesProviders() throws IOException {
+        final Path file = directory.resolve("content/freemarker/bindings.html");
+        final Document document = Jsoup.parse(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        assertThat(document.title(), is("FreeMarker Bindings"));
+    }
+
+    @Test
+    public void testRequestDependentFailed() {
+        assertThat(failed, hasItem("/content/freemarker/include"));
+        assertThat(exported, not(hasItem("/content/freemarker/include")));
+    }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.it.tests;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.inject.Inject;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.resource.presence.ResourcePresence;
+import org.apache.sling.scripting.freemarker.TemplateFinding;
+import org.apache.sling.scripting.freemarker.TemplateLinter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.ops4j.pax.exam.Configuration;
+import org.ops4j.pax.exam.Option;
+import org.ops4j.pax.exam.junit.PaxExam;
+import org.ops4j.pax.exam.spi.reactors.ExamReactorStrategy;
+import org.ops4j.pax.exam.spi.reactors.PerClass;
+import org.ops4j.pax.exam.util.Filter;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.ops4j.pax.exam.CoreOptions.options;
+import static org.ops4j.pax.exam.cm.ConfigurationAdminOptions.factoryConfiguration;
+import static org.ops4j.pax.exam.cm.ConfigurationAdminOptions.newConfiguration;
+
+@RunWith(PaxExam.class)
+@ExamReactorStrategy(PerClass.class)
+public class TemplateLinterIT extends FreemarkerTestSupport {
+
+    private ResourceResolver resourceResolver;
+
+    @Inject
+    private TemplateLinter templateLinter;
+
+    @Inject
+    private ResourceResolverFactory resourceResolverFactory;
+
+    @Inject
+    @Filter(value = "(path=/apps/freemarker/lint/expensive.ftl)", timeout = 300000)
+    private ResourcePresence expensive;
+
+    @Inject
+    @Filter(value = "(path=/apps/freemarker/lint/broken.ftl)", timeout = 300000)
+    private ResourcePresence broken;
+
+    @Configuration
+    public Option[] configuration() {
+        return options(
+            baseConfiguration(),
+            newConfiguration("org.apache.sling.jcr.base.internal.LoginAdminWhitelist")
+                .put("whitelist.bypass", true)
+                .asOption(),
+            factoryConfiguration("org.apache.sling.resource.presence.internal.ResourcePresenter")
+                .put("path", "/apps/freemarker/lint/expensive.ftl")
+                .asOption(),
+            factoryConfiguration("org.apache.sling.resource.presence.internal.ResourcePresenter")
+                .put("path", "/apps/freemarker/lint/broken.ftl")
+                .asOption()
+        );
+    }
+
+    @Before
+    @SuppressWarnings("deprecation")
+    public void setup() throws LoginException {
+        resourceResolver = resourceResolverFactory.getAdministrativeResourceResolver(null);
+    }
+
+    @After
+    public void teardown() {
+        resourceResolver.close();
+    }
+
+    private static List<String> describe(final List<TemplateFinding> findings) {
+        return findings.stream().
+            map(finding -> String.format("%s %s:%s %s %s", finding.getTemplate(), finding.getLine(), finding.getColumn(), finding.getRule(), finding.getCost())).
+            collect(Collectors.toList());
+    }
+
+    @Test
+    public void testLintTemplate() throws IOException {
+        final List<TemplateFinding> findings = templateLinter.lint(resourceResolver, "/apps/freemarker/lint/expensive.ftl");
+        assertThat(describe(findings), contains(
+            "/apps/freemarker/lint/expensive.ftl 20:1 UNBOUNDED_CHILDREN 10",
+            "/apps/freemarker/lint/expensive.ftl 21:3 ADAPT_TO_IN_LOOP 100",
+            "/apps/freemarker/lint/expensive.ftl 22:3 INCLUDE_IN_LOOP 1000",
+            "/apps/freemarker/lint/expensive.ftl 23:3 UNBOUNDED_CHILDREN 100",
+            "/apps/freemarker/lint/expensive.ftl 23:45 EVAL 2000"
+        ));
+    }
+
+    @Test
+    public void testLintTree() throws IOException {
+        final List<TemplateFinding> findings = templateLinter.lint(resourceResolver, "/apps/freemarker/lint");
+        final List<String> brokenFindings = describe(findings).stream().
+            filter(finding -> finding.startsWith("/apps/freemarker/lint/broken.ftl")).
+            map(finding -> finding.substring(finding.lastIndexOf(' ', finding.lastIndexOf(' ') - 1) + 1)).
+            collect(Collectors.toList());
+        assertThat(brokenFindings, contains("PARSE_ERROR 0"));
+    }
+
+    @Test
+    public void testLintSource() throws IOException {
+        final List<TemplateFinding> findings = templateLinter.lint("package/include.ftl", new StringReader("<#list 1..3 as i><@sling.include path=\"/content\"/></#list>"));
+        assertThat(describe(findings), contains("package/include.ftl 1:18 INCLUDE_IN_LOOP 1000"));
+    }
+
+    @Test
+    public void testLintItemsAndForeach() throws IOException {
+        final List<TemplateFinding> findings = templateLinter.lint("package/loops.ftl", new StringReader("<#list xs><#items as x><@sling.include path=x/></#items></#list><#foreach y in ys>${y?eval}</#foreach>"));
+        assertThat(describe(findings), contains(
+            "package/loops.ftl 1:24 INCLUDE_IN_LOOP 1000",
+            "package/loops.ftl 1:83 EVAL 200"
+        ));
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.it.tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+
+import org.apache.sling.resource.presence.ResourcePresence;
+import org.jsoup.Jsoup;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.ops4j.pax.exam.Configuration;
+import org.ops4j.pax.exam.Option;
+import org.ops4j.pax.exam.junit.PaxExam;
+import org.ops4j.pax.exam.spi.reactors.ExamReactorStrategy;
+import org.ops4j.pax.exam.spi.reactors.PerClass;
+import org.ops4j.pax.exam.util.Filter;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.cm.ConfigurationAdmin;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.ops4j.pax.exam.CoreOptions.options;
+import static org.ops4j.pax.exam.cm.ConfigurationAdminOptions.factoryConfiguration;
+import static org.ops4j.pax.exam.cm.ConfigurationAdminOptions.newConfiguration;
+
+@RunWith(PaxExam.class)
+@ExamReactorStrategy(PerClass.class)
+public class TemplateProfilerIT extends FreemarkerTestSupport {
+
+    private static final String PID = "org.apache.sling.scripting.freemarker.internal.TemplateProfiler";
+
+    @Inject
+    private BundleContext bundleContext;
+
+    @Inject
+    private ConfigurationAdmin configurationAdmin;
+
+    @Inject
+    @Filter(value = "(path=/apps/freemarker/page/simple/html.ftl)", timeout = 300000)
+    private ResourcePresence resourcePresence;
+
+    @Configuration
+    public Option[] configuration() {
+        return options(
+            baseConfiguration(),
+            newConfiguration(PID)
+                .put("enabled", true)
+                .put("samplingInterval", 1)
+                .asOption(),
+            factoryConfiguration("org.apache.sling.resource.presence.internal.ResourcePresenter")
+                .put("path", "/apps/freemarker/page/simple/html.ftl")
+                .asOption()
+        );
+    }
+
+    @Test
+    public void testProfileWrittenWhenDisabled() throws IOException, InterruptedException {
+        final String url = String.format("http://localhost:%s/freemarker/simple.html", httpPort());
+        for (int i = 0; i < 10; i++) {
+            Jsoup.connect(url).get();
+        }
+        final Dictionary<String, Object> properties = new Hashtable<>();
+        properties.put("enabled", false);
+        configurationAdmin.getConfiguration(PID, null).update(properties);
+        final List<String> profile = awaitProfile();
+        // script, then the instructions from outermost to innermost with their locations, then the time in microseconds
+        final String line = "/apps/freemarker/page/simple/html\\.ftl;\\$\\{resource\\.name.*\\(/apps/freemarker/page/simple/html\\.ftl:26:\\d+\\) \\d+";
+        assertThat(profile.toString(), profile.stream().anyMatch(l -> l.matches(line)), is(true));
+    }
+
+    private List<String> awaitProfile() throws IOException, InterruptedException {
+        final File file = freemarkerBundle().getBundleContext().getDataFile("template-profile.collapsed");
+        assertThat(file, notNullValue());
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < deadline) {
+            if (file.exists() && file.length() > 0) {
+                return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+            }
+            Thread.sleep(100);
+        }
+        return Collections.emptyList();
+    }
+
+    private Bundle freemarkerBundle() {
+        for (final Bundle bundle : bundleContext.getBundles()) {
+            if ("org.apache.sling.scripting.freemarker".equals(bundle.getSymbolicName())) {
+                return bundle;
+            }
+        }
+        throw new IllegalStateException("bundle org.apache.sling.scripting.freemarker not found");
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.it.tests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import javax.inject.Inject;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.resource.presence.ResourcePresence;
+import org.apache.sling.scripting.freemarker.TemplateRenderer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.ops4j.pax.exam.Configuration;
+import org.ops4j.pax.exam.Option;
+import org.ops4j.pax.exam.junit.PaxExam;
+import org.ops4j.pax.exam.spi.reactors.ExamReactorStrategy;
+import org.ops4j.pax.exam.spi.reactors.PerClass;
+import org.ops4j.pax.exam.util.Filter;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.ops4j.pax.exam.CoreOptions.options;
+import static org.ops4j.pax.exam.cm.ConfigurationAdminOptions.factoryConfiguration;
+import static org.ops4j.pax.exam.cm.ConfigurationAdminOptions.newConfiguration;
+
+@RunWith(PaxExam.class)
+@ExamReactorStrategy(PerClass.class)
+public class TemplateRendererIT extends FreemarkerTestSupport {
+
+    private static final String PATH = "/apps/freemarker/render/greeting.ftl";
+
+    private ResourceResolver resourceResolver;
+
+    @Inject
+    private TemplateRenderer templateRenderer;
+
+    @Inject
+    private ResourceResolverFactory resourceResolverFactory;
+
+    @Inject
+    @Filter(value = "(path=/apps/freemarker/render/greeting.ftl)", timeout = 300000)
+    private ResourcePresence resourcePresence;
+
+    @Configuration
+    public Option[] configuration() {
+        return options(
+            baseConfiguration(),
+            newConfiguration("org.apache.sling.jcr.base.internal.LoginAdminWhitelist")
+                .put("whitelist.bypass", true)
+                .asOption(),
+            factoryConfiguration("org.apache.sling.resource.presence.internal.ResourcePresenter")
+                .put("path", PATH)
+                .asOption()
+        );
+    }
+
+    @Before
+    @SuppressWarnings("deprecation")
+    public void setup() throws LoginException {
+        resourceResolver = resourceResolverFactory.getAdministrativeResourceResolver(null);
+    }
+
+    @After
+    public void teardown() {
+        resourceResolver.close();
+    }
+
+    @Test
+    public void testRenderToWriter() throws IOException {
+        final StringWriter writer = new StringWriter();
+        templateRenderer.render(resourceResolver, PATH, Collections.singletonMap("name", "Writer"), writer);
+        assertThat(writer.toString().trim(), is("Hello Writer!"));
+    }
+
+    @Test
+    public void testRenderToOutputStream() throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        templateRenderer.render(resourceResolver, PATH, Collections.singletonMap("name", "Ünïcödé"), outputStream, StandardCharsets.UTF_8);
+        assertThat(new String(outputStream.toByteArray(), StandardCharsets.UTF_8).trim(), is("Hello Ünïcödé!"));
+    }
+
+    @Test
+    public void testRenderDataModels() throws IOException {
+        final List<Map<String, Object>> dataModels = Arrays.asList(Collections.singletonMap("name", "A"), Collections.singletonMap("name", "B"));
+        final List<String> outputs = templateRenderer.render(resourceResolver, PATH, dataModels);
+        assertThat(outputs.stream().map(String::trim).collect(Collectors.toList()), contains("Hello A!", "Hello B!"));
+    }
+
+    @Test
+    public void testDataModelHidesTemplateModels() throws IOException {
+        final StringWriter writer = new StringWriter();
+        templateRenderer.render(resourceResolver, "/apps/freemarker/render/namespace.ftl", Collections.singletonMap("sling", "Caller"), writer);
+        assertThat(writer.toString().trim(), is("Hello Caller!"));
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.it.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Calendar;
+
+import javax.inject.Inject;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.resource.presence.ResourcePresence;
+import org.jsoup.Jsoup;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.ops4j.pax.exam.Configuration;
+import org.ops4j.pax.exam.Option;
+import org.ops4j.pax.exam.junit.PaxExam;
+import org.ops4j.pax.exam.spi.reactors.ExamReactorStrategy;
+import org.ops4j.pax.exam.spi.reactors.PerClass;
+import org.ops4j.pax.exam.util.Filter;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.ops4j.pax.exam.CoreOptions.options;
+import static org.ops4j.pax.exam.cm.ConfigurationAdminOptions.factoryConfiguration;
+import static org.ops4j.pax.exam.cm.ConfigurationAdminOptions.newConfiguration;
+
+@RunWith(PaxExam.class)
+@ExamReactorStrategy(PerClass.class)
+public class TemplateRevalidationIT extends FreemarkerTestSupport {
+
+    private static final String SCRIPT_CONTENT_PATH = "/apps/freemarker/page/revalidate/html.ftl/jcr:content";
+
+    private ResourceResolver resourceResolver;
+
+    @Inject
+    private ResourceResolverFactory resourceResolverFactory;
+
+    @Inject
+    @Filter(value = "(path=/apps/freemarker/page/revalidate/html.ftl)", timeout = 300000)
+    private ResourcePresence resourcePresence;
+
+    @Configuration
+    public Option[] configuration() {
+        return options(
+            baseConfiguration(),
+            newConfiguration("org.apache.sling.jcr.base.internal.LoginAdminWhitelist")
+                .put("whitelist.bypass", true)
+                .asOption(),
+            newConfiguration("org.apache.sling.scripting.freemarker.internal.TemplateRevalidator")
+                .put("enabled", true)
+                .asOption(),
+            factoryConfiguration("org.apache.sling.resource.presence.internal.ResourcePresenter")
+                .put("path", "/apps/freemarker/page/revalidate/html.ftl")
+                .asOption()
+        );
+    }
+
+    @Before
+    @SuppressWarnings("deprecation")
+    public void setup() throws LoginException {
+        resourceResolver = resourceResolverFactory.getAdministrativeResourceResolver(null);
+    }
+
+    @After
+    public void teardown() {
+        resourceResolver.close();
+    }
+
+    @Test
+    public void testRevalidation() throws IOException, InterruptedException {
+        assertThat(render(), is("1"));
+        // a template failing to parse does not replace the last successfully parsed version
+        update("<span id=\"version\">${</span>");
+        for (int i = 0; i < 10; i++) {
+            assertThat(render(), is("1"));
+            Thread.sleep(100);
+        }
+        update("<span id=\"version\">2</span>");
+        String version = render();
+        for (int i = 0; i < 50 && !"2".equals(version); i++) {
+            Thread.sleep(100);
+            version = render();
+        }
+        assertThat(version, is("2"));
+    }
+
+    private void update(final String body) throws PersistenceException, InterruptedException {
+        // ensure a new modification time
+        Thread.sleep(10);
+        final ModifiableValueMap properties = resourceResolver.getResource(SCRIPT_CONTENT_PATH).adaptTo(ModifiableValueMap.class);
+        properties.put("jcr:data", new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+        properties.put("jcr:lastModified", Calendar.getInstance());
+        resourceResolver.commit();
+    }
+
+    private String render() throws IOException {
+        final String url = String.format("http://localhost:%s/freemarker/revalidate.html", httpPort());
+        return Jsoup.connect(url).get().getElementById("version").text();
+    }
+
+}
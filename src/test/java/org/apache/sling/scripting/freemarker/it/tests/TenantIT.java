@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.scripting.freemarker.it.tests;
+
+import java.io.IOException;
+
+import javax.inject.Inject;
+
+import org.apache.commons.lang3.reflect.FieldUtils;
+import org.apache.sling.resource.presence.ResourcePresence;
+import org.apache.sling.scripting.freemarker.it.app.TenantConfiguration;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.ops4j.pax.exam.Configuration;
+import org.ops4j.pax.exam.Option;
+import org.ops4j.pax.exam.junit.PaxExam;
+import org.ops4j.pax.exam.spi.reactors.ExamReactorStrategy;
+import org.ops4j.pax.exam.spi.reactors.PerClass;
+import org.ops4j.pax.exam.util.Filter;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.ops4j.pax.exam.CoreOptions.options;
+import static org.ops4j.pax.exam.cm.ConfigurationAdminOptions.factoryConfiguration;
+
+@RunWith(PaxExam.class)
+@ExamReactorStrategy(PerClass.class)
+public class TenantIT extends FreemarkerTestSupport {
+
+    @Inject
+    @Filter(value = "(path=/apps/freemarker/page/tenant/html.ftl)", timeout = 300000)
+    private ResourcePresence tenant;
+
+    @Inject
+    @Filter(value = "(path=/apps/freemarker/page/tenantless/html.ftl)", timeout = 300000)
+    private ResourcePresence tenantless;
+
+    @Inject
+    @Filter("(sling.scripting.freemarker.tenant=acme)")
+    private freemarker.template.Configuration configuration;
+
+    @Configuration
+    public Option[] configuration() {
+        return options(
+            baseConfiguration(),
+            buildBundleWithBnd(
+                TenantConfiguration.class
+            ),
+            factoryConfiguration("org.apache.sling.resource.presence.internal.ResourcePresenter")
+                .put("path", "/apps/freemarker/page/tenant/html.ftl")
+                .asOption(),
+            factoryConfiguration("org.apache.sling.resource.presence.internal.ResourcePresenter")
+                .put("path", "/apps/freemarker/page/tenantless/html.ftl")
+                .asOption()
+        );
+    }
+
+    private Document get(final String page) throws IOException {
+        final String url = String.format("http://localhost:%s/freemarker/%s.html", httpPort(), page);
+        return Jsoup.connect(url).get();
+    }
+
+    @Test
+    public void testTenantConfiguration() throws IOException {
+        final Document document = get("tenant");
+        assertThat(document.title(), is("Sling Tenant"));
+        assertThat(document.getElementById("tenant").text(), is("acme"));
+    }
+
+    @Test
+    public void testDefaultConfiguration() throws IOException {
+        final Document document = get("tenantless");
+        assertThat(document.title(), is("Sling Tenantless"));
+        assertThat(document.getElementById("tenant").text(), is("none"));
+    }
+
+    @Test
+    public void testScriptEngineFactoryConfiguration() throws IllegalAccessException {
+        final Object configuration = FieldUtils.readDeclaredField(scriptEngineFactory, "configuration", true);
+        assertThat(configuration, not(sameInstance(this.configuration)));
+    }
+
+}
@@ -0,0 +1,33 @@
+<!DOCTYPE html>
+<!--
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+-->
+<html lang="en">
+<head>
+  <meta charset="UTF-8"/>
+  <title>${resource.valueMap.title}</title>
+</head>
+<body>
+<div id="resource"><@sling.include include=resource.getChild("first")/></div>
+<div id="path"><@sling.include include="second"/></div>
+<div id="selectors"><@sling.include include="second" addSelectors="compact"/></div>
+<div id="resourceType"><@sling.include include="plain" resourceType="freemarker/item"/></div>
+<div id="suffix"><@sling.include include="first" replaceSuffix="/content/freemarker"/></div>
+<div id="recursion"><#attempt><@sling.include include="first" addSelectors="recursive"/><#recover>recursion stopped</#attempt></div>
+</body>
+</html>
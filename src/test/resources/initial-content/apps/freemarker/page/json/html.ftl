@@ -0,0 +1,35 @@
+<!DOCTYPE html>
+<!--
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+-->
+<#assign document = sling.json("data")>
+<html lang="en">
+<head>
+  <meta charset="UTF-8"/>
+  <title>${document.title}</title>
+</head>
+<body>
+<ul id="items">
+<#list document.items as item>
+  <li>${item.name}</li>
+</#list>
+</ul>
+<span id="count">${document.count}</span>
+<span id="passed"><#attempt>${document.meta.tags?has_content?c}<#recover>passed</#attempt></span>
+</body>
+</html>
@@ -0,0 +1,37 @@
+<!DOCTYPE html>
+<!--
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+-->
+<#macro item name>
+<#-- rendered once per item -->
+  <li>${"Item" + " "}${name}</li>
+</#macro>
+<html lang="en">
+<head>
+  <meta charset="UTF-8"/>
+  <title>${"Sling"} <#-- comment --> Optimize</title>
+</head>
+<body>
+<ul id="items">
+<#list ["foo", "bar"] as name>
+  <@item name=name/>
+</#list>
+</ul>
+<span id="escaped"><#escape x as x?html>${"<b>"}</#escape></span>
+</body>
+</html>